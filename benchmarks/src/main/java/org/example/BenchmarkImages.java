@@ -0,0 +1,58 @@
+package org.example;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Тестовые изображения для бенчмарков.
+ */
+final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * Создает изображение со случайными пикселями; при одинаковых параметрах содержимое совпадает.
+     *
+     * @param size Размер в формате {@code ШИРИНАxВЫСОТА}, например {@code 1000x1000}.
+     * @param type Тип изображения: {@code INT_RGB} или {@code 3BYTE_BGR}.
+     * @return Новое изображение.
+     */
+    static BufferedImage create(String size, String type) {
+        int separator = size.indexOf('x');
+        int width = Integer.parseInt(size.substring(0, separator));
+        int height = Integer.parseInt(size.substring(separator + 1));
+
+        BufferedImage image = new BufferedImage(width, height, imageType(type));
+        Random rand = new Random(width * 31L + height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = rand.nextInt();
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    /**
+     * Создает планарное изображение со случайными пикселями, как {@link #create}.
+     *
+     * @param size Размер в формате {@code ШИРИНАxВЫСОТА}.
+     * @return Новое планарное изображение с тремя каналами.
+     */
+    static PlanarImage createPlanar(String size) {
+        return PlanarImage.fromImage(create(size, "INT_RGB"));
+    }
+
+    private static int imageType(String type) {
+        switch (type) {
+            case "INT_RGB":
+                return BufferedImage.TYPE_INT_RGB;
+            case "3BYTE_BGR":
+                return BufferedImage.TYPE_3BYTE_BGR;
+            default:
+                throw new IllegalArgumentException("Неизвестный тип изображения: " + type);
+        }
+    }
+}
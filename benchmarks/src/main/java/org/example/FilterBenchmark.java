@@ -0,0 +1,69 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки медианного, среднегармонического и переключающегося медианного фильтров.
+ * Размеры изображений от 0.25 до 50 мегапикселей, все размеры маски, доступные в интерфейсе.
+ * Как и в интерфейсе, фильтры применяются к изображению с импульсным шумом плотностью 10%.
+ * <p>
+ * Фильтры вызываются напрямую на планарных буферах с общим исполнителем {@link TiledExecutor},
+ * без преобразования {@code BufferedImage} и статистики стадий. Результат пишется в отдельный
+ * буфер, поэтому исходное изображение не изменяется и не восстанавливается между вызовами.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class FilterBenchmark {
+
+    @Param({"500x500", "1000x1000", "4000x3000", "6000x4000", "8660x5774"})
+    public String size;
+
+    @Param({"3", "5", "7", "9", "11"})
+    public int maskSize;
+
+    private final TiledExecutor executor = TiledExecutor.getDefault();
+    private PlanarImage source;     // Зашумленное исходное изображение
+    private PlanarImage target;     // Результат фильтрации
+
+    @Setup(Level.Trial)
+    public void createImage() {
+        source = BenchmarkImages.createPlanar(size);
+        NoiseGenerator.apply(source, SpatialFiltering.NoiseType.BIPOLAR, NoiseGenerator.DEFAULT_DENSITY, 0);
+        target = new PlanarImage(source.getWidth(), source.getHeight());
+    }
+
+    @Benchmark
+    public PlanarImage medianFilter() {
+        MedianFilter.apply(source, target, maskSize, executor);
+        return target;
+    }
+
+    @Benchmark
+    public PlanarImage harmonicMeanFilter() {
+        HarmonicMeanFilter.apply(source, target, maskSize, executor);
+        return target;
+    }
+
+    @Benchmark
+    public PlanarImage switchingMedianFilter() {
+        SwitchingMedianFilter.apply(source, target, maskSize, executor);
+        return target;
+    }
+}
@@ -0,0 +1,85 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки добавления шума, выделения канала и преобразований между {@link BufferedImage}
+ * и планарным буфером, которыми конвейер обработки читает исходное изображение и записывает результаты.
+ * <p>
+ * Операции вызываются напрямую, без статистики стадий. Шум добавляется в один и тот же планарный
+ * буфер: стоимость выбора и записи пикселей не зависит от их значений, поэтому буфер
+ * не восстанавливается между вызовами.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class ImageOpsBenchmark {
+
+    @Param({"500x500", "1000x1000", "4000x3000", "6000x4000", "8660x5774"})
+    public String size;
+
+    @Param({"INT_RGB", "3BYTE_BGR"})
+    public String type;
+
+    private BufferedImage image;    // Исходное изображение
+    private BufferedImage target;   // Изображение для записи результатов
+    private PlanarImage planar;     // Планарная копия исходного изображения
+    private long seed;              // Зерно генератора шума, свое для каждого вызова
+
+    /**
+     * Тип шума вынесен в отдельное состояние, чтобы он умножал только запуски {@link #addNoise}.
+     */
+    @State(Scope.Benchmark)
+    public static class NoiseState {
+        @Param({"UNIPOLAR", "BIPOLAR"})
+        public String noiseType;
+    }
+
+    @Setup(Level.Trial)
+    public void createImage() {
+        image = BenchmarkImages.create(size, type);
+        target = PlanarImage.createCompatibleImage(image);
+        planar = PlanarImage.fromImage(image);
+    }
+
+    @Benchmark
+    public BitSet addNoise(NoiseState noise) {
+        SpatialFiltering.NoiseType noiseType = SpatialFiltering.NoiseType.valueOf(noise.noiseType);
+        return NoiseGenerator.apply(planar, noiseType, NoiseGenerator.DEFAULT_DENSITY, ++seed);
+    }
+
+    @Benchmark
+    public BufferedImage extractChannel() {
+        planar.writeChannelTo(target, SpatialFiltering.Channel.G.ordinal());
+        return target;
+    }
+
+    @Benchmark
+    public PlanarImage readPlanar() {
+        return PlanarImage.fromImage(image);
+    }
+
+    @Benchmark
+    public BufferedImage writePlanar() {
+        planar.writeTo(target);
+        return target;
+    }
+}
@@ -0,0 +1,511 @@
+package org.example;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Пакетная обработка изображений из командной строки без графического интерфейса.
+ * <p>
+ * Обработка разделена на три стадии: чтение и декодирование, добавление шума и фильтрация,
+ * кодирование в PNG и запись. У каждой стадии свой пул потоков, а стадии связаны очередями
+ * ограниченной емкости. Поэтому ввод-вывод выполняется одновременно с вычислениями, а количество
+ * изображений в памяти ограничено емкостью очередей и числом потоков, а не размером пакета.
+ * <p>
+ * С параметром {@code --cache} результаты сохраняются в каталоге кэша ({@link ResultCache}),
+ * и при повторном запуске с теми же изображениями и параметрами обработка не выполняется,
+ * а исходные изображения читаются из несжатых копий без декодирования ({@link RawImageCache}).
+ * <p>
+ * Время и память стадий каждого изображения учитываются в {@link StageMetrics}; с системным
+ * свойством {@code -Ddsp.metrics.log=true} для каждого изображения выводится строка JSON со статистикой.
+ */
+final class BatchProcessor {
+
+    /**
+     * Описание параметров командной строки.
+     */
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Использование: SpatialFiltering --batch <каталог|маска> [параметры]",
+            "  --out <каталог>           каталог для результатов (по умолчанию output)",
+            "  --noise UNIPOLAR|BIPOLAR  тип шума (по умолчанию UNIPOLAR)",
+            "  --density <проценты>      плотность шума (по умолчанию 10)",
+            "  --seed <число>            зерно генератора шума (по умолчанию 0)",
+            "  --channel R|G|B           выделяемый канал (по умолчанию R)",
+            "  --filter <тип>            MEDIAN, HARMONIC_MEAN или SWITCHING_MEDIAN (по умолчанию MEDIAN)",
+            "  --mask <размер>           нечетный размер маски (по умолчанию 3)",
+            "  --format <формат>         PNG, PNG_FAST, PNG_UNCOMPRESSED или BMP (по умолчанию PNG)",
+            "  --decode-threads <n>      потоки чтения (по умолчанию 2)",
+            "  --process-threads <n>     потоки обработки (по умолчанию 2)",
+            "  --encode-threads <n>      потоки записи (по умолчанию 2)",
+            "  --queue <n>               емкость очередей между стадиями (по умолчанию 4)",
+            "  --cache <каталог>         каталог кэша результатов (по умолчанию без кэша)");
+
+    /**
+     * Расширения файлов, которые обрабатываются при указании каталога.
+     */
+    private static final String[] IMAGE_EXTENSIONS = {"png", "jpg", "jpeg", "bmp"};
+
+    /**
+     * Признак окончания входных данных, передаваемый по очередям.
+     */
+    private static final Job END = new Job(null);
+
+    private final Options options;                              // Параметры обработки
+    private final ResultCache cache;                            // Кэш результатов или null
+    private final RawImageCache rawCache;                       // Несжатые копии исходных изображений
+    private final ImageExporter exporter;                       // Запись результатов в выбранном формате
+    private final AtomicInteger completed = new AtomicInteger(); // Количество обработанных изображений
+    private final AtomicInteger failed = new AtomicInteger();    // Количество изображений с ошибками
+
+    BatchProcessor(Options options) {
+        this.options = options;
+        // Каждое изображение пакета обрабатывается один раз, поэтому кэш нужен только на диске
+        this.cache = options.cacheDirectory != null ? new ResultCache(0, options.cacheDirectory) : null;
+        this.rawCache = new RawImageCache(options.cacheDirectory);
+        this.exporter = ImageExporter.of(options.exportFormat);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            Options options = Options.parse(args);
+            List<Path> inputs = findInputs(options.input);
+            if (inputs.isEmpty()) {
+                System.err.println("Не найдено ни одного изображения: " + options.input);
+                System.exit(1);
+            }
+            int failures = new BatchProcessor(options).run(inputs);
+            System.exit(failures == 0 ? 0 : 1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Обрабатывает все изображения и ожидает завершения всех стадий.
+     *
+     * @param inputs Пути к исходным изображениям.
+     * @return Количество изображений, обработанных с ошибкой.
+     * @throws IOException          Если не удалось создать каталог для результатов.
+     * @throws InterruptedException Если ожидание было прервано.
+     */
+    int run(List<Path> inputs) throws IOException, InterruptedException {
+        Files.createDirectories(options.output);
+        long start = System.nanoTime();
+
+        // Стадии создаются с конца, чтобы каждая знала следующую
+        Stage encode = new Stage("encode", options.encodeThreads, options.queueCapacity, null, this::encode);
+        Stage process = new Stage("process", options.processThreads, options.queueCapacity, encode, this::process);
+        Stage decode = new Stage("decode", options.decodeThreads, options.queueCapacity, process, this::decode);
+
+        // Очередь стадии чтения ограничена, поэтому при заполнении конвейера добавление задач блокируется
+        for (Path input : inputs) {
+            decode.input.put(new Job(input));
+        }
+        decode.finish();
+
+        decode.await();
+        process.await();
+        encode.await();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "Обработано изображений: %d, с ошибками: %d, время: %.2f с%n",
+                completed.get(), failed.get(), seconds);
+        return failed.get();
+    }
+
+    /**
+     * Стадия чтения: декодирует файл.
+     */
+    private void decode(Job job) throws IOException {
+        try (StageMetrics.Measurement stage = job.metrics.measure("decode", 0, 1)) {
+            job.image = rawCache.load(job.input);
+            if (job.image == null) {
+                throw new IOException("Неподдерживаемый формат изображения");
+            }
+            stage.pixels((long) job.image.getWidth() * job.image.getHeight());
+        }
+    }
+
+    /**
+     * Стадия обработки: добавляет шум, выделяет канал и применяет фильтр к зашумленному изображению.
+     */
+    private void process(Job job) {
+        String noiseKey = null;
+        String channelKey = null;
+        String filterKey = null;
+        if (cache != null) {
+            // Ключи совпадают с ключами интерфейса, поэтому каталог кэша можно использовать совместно
+            noiseKey = ResultCache.key(job.image.key(), "noise",
+                    options.noiseType, options.density, options.seed);
+            channelKey = ResultCache.key(noiseKey, "channel", options.channel);
+            filterKey = ResultCache.key(noiseKey, "filter", options.filterType, options.maskSize);
+            job.noisyImage = cache.get(noiseKey);
+            job.channelImage = cache.get(channelKey);
+            job.filteredImage = cache.get(filterKey);
+            if (job.noisyImage != null && job.channelImage != null && job.filteredImage != null) {
+                job.image = null;
+                return;
+            }
+        }
+
+        ProcessingPipeline pipeline = new ProcessingPipeline()
+                .noise(options.noiseType, options.density, options.seed)
+                .channel(options.channel)
+                .filter(options.filterType, options.maskSize)
+                .job(job.metrics);
+        // Каналы из кэша несжатых копий используются без повторного чтения растра
+        PlanarImage planar = job.image.getPlanar();
+        ProcessingPipeline.Result result = planar != null
+                ? pipeline.run(planar, job.image.getType())
+                : pipeline.run(job.image.toImage());
+        job.image = null;
+        job.noisyImage = result.noisyImage();
+        job.channelImage = result.channelImage();
+        job.filteredImage = result.filteredImage();
+
+        if (cache != null) {
+            cache.put(noiseKey, job.noisyImage);
+            cache.put(channelKey, job.channelImage);
+            cache.put(filterKey, job.filteredImage);
+        }
+    }
+
+    /**
+     * Стадия записи: кодирует результаты в выбранном формате.
+     */
+    private void encode(Job job) throws IOException {
+        String name = job.input.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+
+        String extension = "." + exporter.getExtension();
+        exporter.write(job.noisyImage, options.output.resolve(baseName + "-noise" + extension), job.metrics);
+        exporter.write(job.channelImage, options.output.resolve(baseName + "-channel" + extension), job.metrics);
+        exporter.write(job.filteredImage, options.output.resolve(baseName + "-filter" + extension), job.metrics);
+        job.noisyImage = null;
+        job.channelImage = null;
+        job.filteredImage = null;
+    }
+
+    /**
+     * Учитывает завершение обработки изображения.
+     */
+    private void complete(Job job) {
+        job.metrics.finish();
+        if (job.error != null) {
+            failed.incrementAndGet();
+            System.err.println("Ошибка обработки " + job.input + ": " + job.error);
+        } else {
+            completed.incrementAndGet();
+            System.out.println("Обработано: " + job.input);
+        }
+    }
+
+    /**
+     * Находит исходные изображения по пути к каталогу, файлу или маске вида {@code dir/**.png}.
+     *
+     * @param pattern Путь или маска в синтаксисе glob.
+     * @return Отсортированный список найденных файлов.
+     * @throws IOException Если не удалось прочитать каталог.
+     */
+    static List<Path> findInputs(String pattern) throws IOException {
+        List<Path> result = new ArrayList<>();
+        int globStart = indexOfGlob(pattern);
+
+        if (globStart < 0) {
+            Path path = Paths.get(pattern);
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                    for (Path file : stream) {
+                        if (Files.isRegularFile(file) && isImageFile(file)) {
+                            result.add(file);
+                        }
+                    }
+                }
+            } else if (Files.isRegularFile(path)) {
+                result.add(path);
+            }
+        } else {
+            // Каталог до первого специального символа маски просматривается рекурсивно
+            int separator = Math.max(pattern.lastIndexOf('/', globStart), pattern.lastIndexOf('\\', globStart));
+            Path base = Paths.get(separator >= 0 ? pattern.substring(0, separator + 1) : ".");
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(separator + 1));
+            if (Files.isDirectory(base)) {
+                try (Stream<Path> files = Files.walk(base)) {
+                    files.filter(Files::isRegularFile)
+                            .filter(file -> matcher.matches(base.relativize(file)))
+                            .forEach(result::add);
+                }
+            }
+        }
+
+        Collections.sort(result);
+        return result;
+    }
+
+    private static int indexOfGlob(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isImageFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (name.endsWith("." + extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Изображение, передаваемое между стадиями.
+     */
+    private static final class Job {
+        final Path input;                   // Путь к исходному файлу
+        final StageMetrics.Job metrics;     // Статистика стадий (null у маркера конца)
+        RawImageCache.Entry image;          // Прочитанное изображение
+        BufferedImage noisyImage;           // Зашумленное изображение
+        BufferedImage channelImage;         // Изображение с выделенным каналом
+        BufferedImage filteredImage;        // Отфильтрованное изображение
+        Exception error;                    // Ошибка на одной из стадий
+
+        Job(Path input) {
+            this.input = input;
+            this.metrics = input != null ? StageMetrics.getDefault().job(input.toString()) : null;
+        }
+    }
+
+    /**
+     * Действие стадии над изображением.
+     */
+    private interface JobAction {
+        void apply(Job job) throws Exception;
+    }
+
+    /**
+     * Стадия конвейера: пул потоков, забирающих изображения из своей очереди и передающих их
+     * в очередь следующей стадии. Последний завершившийся поток стадии передает признак
+     * окончания каждому потоку следующей стадии.
+     */
+    private final class Stage {
+        final BlockingQueue<Job> input;       // Очередь входящих изображений
+        private final int threads;            // Количество потоков стадии
+        private final Stage next;             // Следующая стадия или null для последней
+        private final JobAction action;       // Действие над изображением
+        private final AtomicInteger running;  // Количество работающих потоков
+        private final ExecutorService pool;   // Пул потоков стадии
+
+        Stage(String name, int threads, int queueCapacity, Stage next, JobAction action) {
+            this.input = new ArrayBlockingQueue<>(queueCapacity);
+            this.threads = threads;
+            this.next = next;
+            this.action = action;
+            this.running = new AtomicInteger(threads);
+
+            AtomicInteger counter = new AtomicInteger();
+            this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "batch-" + name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < threads; i++) {
+                pool.execute(this::work);
+            }
+        }
+
+        private void work() {
+            try {
+                while (true) {
+                    Job job = input.take();
+                    if (job == END) {
+                        return;
+                    }
+
+                    // Изображение с ошибкой проходит оставшиеся стадии без обработки
+                    if (job.error == null) {
+                        try {
+                            action.apply(job);
+                        } catch (Throwable e) {
+                            // Любая ошибка действия, включая StackOverflowError и AssertionError, относится
+                            // к изображению и не завершает поток стадии
+                            job.error = e instanceof Exception ? (Exception) e : new IllegalStateException(e);
+                            job.image = null;
+                            job.noisyImage = null;
+                            job.channelImage = null;
+                            job.filteredImage = null;
+                        }
+                    }
+
+                    if (next != null) {
+                        next.input.put(job);
+                    } else {
+                        complete(job);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // Поток, завершившийся и из-за ошибки, тоже учитывается, иначе следующая стадия
+                // не получит признак окончания и await() не вернется
+                if (running.decrementAndGet() == 0 && next != null) {
+                    try {
+                        next.finish();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Передает признак окончания входных данных всем потокам стадии.
+         */
+        void finish() throws InterruptedException {
+            for (int i = 0; i < threads; i++) {
+                input.put(END);
+            }
+        }
+
+        /**
+         * Ожидает завершения всех потоков стадии.
+         */
+        void await() throws InterruptedException {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Параметры пакетной обработки.
+     */
+    static final class Options {
+        String input;                                                   // Каталог или маска файлов
+        Path output = Paths.get("output");                              // Каталог для результатов
+        SpatialFiltering.NoiseType noiseType = SpatialFiltering.NoiseType.UNIPOLAR;
+        double density = NoiseGenerator.DEFAULT_DENSITY;                // Плотность шума
+        long seed;                                                      // Зерно генератора шума
+        SpatialFiltering.Channel channel = SpatialFiltering.Channel.R;
+        SpatialFiltering.FilterType filterType = SpatialFiltering.FilterType.MEDIAN;
+        int maskSize = 3;                                               // Размер маски фильтра
+        SpatialFiltering.ExportFormat exportFormat = SpatialFiltering.ExportFormat.PNG;
+        int decodeThreads = 2;                                          // Потоки чтения
+        int processThreads = 2;                                         // Потоки обработки
+        int encodeThreads = 2;                                          // Потоки записи
+        int queueCapacity = 4;                                          // Емкость очередей
+        Path cacheDirectory;                                            // Каталог кэша или null
+
+        /**
+         * Разбирает параметры командной строки.
+         *
+         * @param args Параметры после ключа {@code --batch}.
+         * @return Параметры обработки.
+         * @throws IllegalArgumentException Если параметры заданы неверно.
+         */
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    if (options.input != null) {
+                        throw new IllegalArgumentException("Лишний параметр: " + arg);
+                    }
+                    options.input = arg;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Не указано значение параметра " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--out":
+                        options.output = Paths.get(value);
+                        break;
+                    case "--noise":
+                        options.noiseType = SpatialFiltering.NoiseType.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--density":
+                        options.density = Double.parseDouble(value) / 100;
+                        NoiseGenerator.noiseAmount(0, options.density);
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case "--channel":
+                        options.channel = SpatialFiltering.Channel.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--filter":
+                        options.filterType = SpatialFiltering.FilterType.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--mask":
+                        options.maskSize = Integer.parseInt(value);
+                        if (options.maskSize < 1 || options.maskSize % 2 == 0) {
+                            throw new IllegalArgumentException("Размер маски должен быть нечетным: " + value);
+                        }
+                        break;
+                    case "--format":
+                        options.exportFormat = SpatialFiltering.ExportFormat.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--decode-threads":
+                        options.decodeThreads = positive(arg, value);
+                        break;
+                    case "--process-threads":
+                        options.processThreads = positive(arg, value);
+                        break;
+                    case "--encode-threads":
+                        options.encodeThreads = positive(arg, value);
+                        break;
+                    case "--queue":
+                        options.queueCapacity = positive(arg, value);
+                        break;
+                    case "--cache":
+                        options.cacheDirectory = Paths.get(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+                }
+            }
+            if (options.input == null) {
+                throw new IllegalArgumentException("Не указан каталог или маска исходных изображений");
+            }
+            return options;
+        }
+
+        private static int positive(String name, String value) {
+            int result = Integer.parseInt(value);
+            if (result < 1) {
+                throw new IllegalArgumentException("Значение " + name + " должно быть положительным: " + value);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,737 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Локальный HTTP-сервис фильтрации на основе {@code com.sun.net.httpserver}.
+ * <p>
+ * {@code POST /filter?noise=UNIPOLAR&density=10&channel=R&filter=MEDIAN&mask=3} принимает в теле
+ * запроса изображение (PNG, JPEG, BMP) и возвращает результат последней заданной стадии или стадии
+ * из параметра {@code output} в формате {@code format} (по умолчанию {@code PNG_FAST}).
+ * {@code GET /stats} возвращает JSON с глубиной очереди, счетчиками запросов и процентилями задержки.
+ * <p>
+ * Запросы проходят через ограниченную очередь допуска: если в обработке и в очереди уже
+ * {@code --queue} запросов, новый запрос сразу получает ответ 429 и тело запроса не читается.
+ * Вместе с ограничением размера запроса ({@code --max-bytes}) это ограничивает память сжатых данных.
+ * Память декодированных изображений ограничивает бюджет пикселей ({@code --max-inflight-pixels},
+ * по умолчанию по половине наибольшего размера кучи из расчета {@value #BYTES_PER_PIXEL} байт
+ * на пиксель): запрос занимает из бюджета размер изображения по заголовку и, если бюджета
+ * не хватает, получает ответ 429. Изображение больше всего бюджета обрабатывается, только когда
+ * других изображений в обработке нет. Запросы ожидают обработки в потоках сервера: на Java 21+ -
+ * в виртуальных потоках, иначе - в пуле потоков.
+ * <p>
+ * Обработкой управляет один поток-диспетчер. Большое изображение фильтруется параллельно по полосам
+ * общим исполнителем {@link TiledExecutor}, а малые изображения (до {@value #SMALL_IMAGE_PIXELS}
+ * пикселей), ожидающие в очереди, объединяются в пакет до {@code --batch-size} изображений,
+ * которые обрабатываются одновременно в пуле обработки, каждое в одном потоке. Для малых
+ * изображений деление на полосы дает больше накладных расходов, чем выигрыша.
+ */
+final class FilterServer {
+
+    /**
+     * Описание параметров командной строки.
+     */
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Использование: SpatialFiltering --serve [параметры]",
+            "  --port <номер>            порт (по умолчанию 8080)",
+            "  --bind <адрес>            адрес (по умолчанию 127.0.0.1)",
+            "  --workers <n>             потоки обработки пакетов (по умолчанию по числу процессоров)",
+            "  --queue <n>               наибольшее количество запросов в очереди и обработке (по умолчанию 16)",
+            "  --batch-size <n>          наибольшее количество малых изображений в пакете (по умолчанию 8)",
+            "  --max-bytes <мегабайты>   наибольший размер тела запроса (по умолчанию 32)",
+            "  --max-pixels <мегапиксели> наибольший размер изображения (по умолчанию 40)",
+            "  --max-inflight-pixels <мегапиксели> наибольший общий размер изображений в очереди",
+            "                            и обработке (по умолчанию по размеру кучи)");
+
+    /**
+     * Наибольшее количество пикселей изображения, которое объединяется с другими в пакет (512x512).
+     */
+    static final int SMALL_IMAGE_PIXELS = 512 * 512;
+
+    /**
+     * Оценка памяти на пиксель при обработке: декодированное изображение, исходный и отфильтрованный
+     * планарные буферы, изображение результата и сжатый ответ.
+     */
+    static final int BYTES_PER_PIXEL = 20;
+
+    /**
+     * Количество пикселей в одном разрешении бюджета пикселей.
+     */
+    private static final int PIXELS_PER_PERMIT = 1024;
+
+    /**
+     * Количество последних запросов, по которым вычисляются процентили задержки.
+     */
+    private static final int LATENCY_SAMPLES = 4096;
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService handlers;                     // Потоки, ожидающие ответа на запросы
+    private final ExecutorService workers;                      // Пул обработки малых изображений
+    private final TiledExecutor sequential = new TiledExecutor(1);
+    private final Semaphore admission;                          // Свободные места в очереди допуска
+    private final Semaphore pixelBudget;                        // Свободный бюджет пикселей (по 1024)
+    private final int pixelPermits;                             // Весь бюджет пикселей (по 1024)
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private final Latencies latencies = new Latencies(LATENCY_SAMPLES);
+    private final AtomicLong requestNumber = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();       // Ответы 429
+    private final AtomicLong completed = new AtomicLong();      // Успешные ответы
+    private final AtomicLong failed = new AtomicLong();         // Ответы с ошибкой
+    private final AtomicLong batches = new AtomicLong();        // Пакеты малых изображений
+    private final AtomicLong batchedImages = new AtomicLong();  // Изображения в пакетах
+
+    FilterServer(Options options) throws IOException {
+        this.options = options;
+        this.admission = new Semaphore(options.queueCapacity);
+        this.pixelPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, options.inflightPixels / PIXELS_PER_PERMIT));
+        this.pixelBudget = new Semaphore(pixelPermits);
+        this.handlers = newHandlerExecutor();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(options.workers, task -> {
+            Thread thread = new Thread(task, "filter-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatch, "filter-dispatcher");
+
+        server = HttpServer.create(new InetSocketAddress(options.bind, options.port), 0);
+        server.setExecutor(handlers);
+        server.createContext("/filter", this::handleFilter);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            FilterServer server = new FilterServer(Options.parse(args));
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Запускает сервер и поток-диспетчер.
+     */
+    void start() {
+        dispatcher.start();
+        server.start();
+        System.out.printf("Сервер фильтрации: http://%s:%d/filter%n",
+                options.bind, server.getAddress().getPort());
+    }
+
+    /**
+     * Останавливает сервер; запросы в очереди завершаются с ошибкой.
+     */
+    void stop() {
+        server.stop(0);
+        dispatcher.interrupt();
+        workers.shutdownNow();
+        handlers.shutdownNow();
+        for (Request request; (request = queue.poll()) != null; ) {
+            request.result.completeExceptionally(new IOException("Сервер остановлен"));
+        }
+    }
+
+    /**
+     * @return Адрес, на котором сервер принимает запросы.
+     */
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Создает исполнитель для обработчиков запросов: виртуальный поток на запрос на Java 21+,
+     * иначе пул потоков. Метод Java 21 вызывается через отражение, так как сборка выполняется для Java 11.
+     */
+    private static ExecutorService newHandlerExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Java до 21 или виртуальные потоки недоступны (предварительная функция на Java 19-20)
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "http-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Обрабатывает запрос фильтрации: допуск, чтение тела, ожидание результата и ответ.
+     */
+    private void handleFilter(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendText(exchange, 405, "Ожидается запрос POST");
+                return;
+            }
+            // Переполненная очередь отклоняет запрос до чтения тела, поэтому нагрузка не увеличивает память
+            if (!admission.tryAcquire()) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendText(exchange, 429, "Очередь запросов заполнена");
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                Request request = new Request(requestNumber.incrementAndGet(),
+                        Params.parse(exchange.getRequestURI().getRawQuery()), readBody(exchange));
+                request.pixels = imageSize(request.body);
+
+                // Изображение больше бюджета занимает весь бюджет и обрабатывается одно
+                int permits = (int) Math.min(pixelPermits,
+                        (request.pixels + PIXELS_PER_PERMIT - 1) / PIXELS_PER_PERMIT);
+                if (!pixelBudget.tryAcquire(permits)) {
+                    rejected.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendText(exchange, 429, "Превышен бюджет памяти изображений");
+                    return;
+                }
+                try {
+                    queue.add(request);
+                    byte[] image = request.result.get();
+                    exchange.getResponseHeaders().set("Content-Type",
+                            "image/" + request.params.exporter.getExtension());
+                    send(exchange, 200, image);
+                    completed.incrementAndGet();
+                    latencies.add(System.nanoTime() - start);
+                } finally {
+                    pixelBudget.release(permits);
+                }
+            } catch (ExecutionException e) {
+                fail(exchange, e.getCause());
+            } catch (IllegalArgumentException | RequestException e) {
+                fail(exchange, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(exchange, e);
+            } catch (Throwable e) {
+                // Непредвиденная ошибка, например чтения тела запроса, получает ответ 500
+                fail(exchange, e);
+            } finally {
+                admission.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Отвечает на запрос статистики.
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            send(exchange, 200, statistics().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Возвращает статистику сервера в формате JSON.
+     */
+    String statistics() {
+        long[] sorted = latencies.sorted();
+        return String.format(Locale.ROOT,
+                "{\"queueDepth\":%d,\"inFlight\":%d,\"queueCapacity\":%d,\"inFlightPixels\":%d,"
+                        + "\"pixelBudget\":%d,\"completed\":%d,\"failed\":%d,"
+                        + "\"rejected\":%d,\"batches\":%d,\"batchedImages\":%d,"
+                        + "\"latencyMillis\":{\"samples\":%d,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}}",
+                queue.size(), options.queueCapacity - admission.availablePermits(), options.queueCapacity,
+                (long) (pixelPermits - pixelBudget.availablePermits()) * PIXELS_PER_PERMIT,
+                (long) pixelPermits * PIXELS_PER_PERMIT,
+                completed.get(), failed.get(), rejected.get(), batches.get(), batchedImages.get(),
+                sorted.length, percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                percentile(sorted, 1.0));
+    }
+
+    /**
+     * Отправляет ответ с кодом ошибки: 400 для неверных параметров, код {@link RequestException}
+     * или 500 для остальных ошибок.
+     */
+    private void fail(HttpExchange exchange, Throwable error) throws IOException {
+        failed.incrementAndGet();
+        int status = 500;
+        if (error instanceof IllegalArgumentException) {
+            status = 400;
+        } else if (error instanceof RequestException) {
+            status = ((RequestException) error).status;
+        } else {
+            error.printStackTrace();
+        }
+        sendText(exchange, status, error.getMessage() != null ? error.getMessage() : error.toString());
+    }
+
+    /**
+     * Читает тело запроса, не превышая наибольшего размера.
+     */
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        long maxBytes = options.maxBytes;
+        String header = exchange.getRequestHeaders().getFirst("Content-Length");
+        long length = header != null ? Long.parseLong(header) : 8192;
+        if (length > maxBytes) {
+            throw new RequestException(413, "Размер запроса превышает " + maxBytes + " байт");
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream((int) Math.min(length, Integer.MAX_VALUE - 8));
+        try (InputStream input = exchange.getRequestBody()) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int n; (n = input.read(buffer)) > 0; ) {
+                if (result.size() + n > maxBytes) {
+                    throw new RequestException(413, "Размер запроса превышает " + maxBytes + " байт");
+                }
+                result.write(buffer, 0, n);
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Определяет размер изображения по заголовку, не декодируя пиксели.
+     *
+     * @return Количество пикселей.
+     * @throws RequestException 415 для неподдерживаемого формата, 400 для усеченного или поврежденного
+     *                          заголовка, 413 для слишком большого изображения.
+     */
+    private long imageSize(byte[] body) throws RequestException {
+        long pixels;
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(body))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new RequestException(415, "Неподдерживаемый формат изображения");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (RequestException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            // Модули чтения сообщают об усеченном заголовке как IIOException, так и исключениями времени выполнения
+            throw new RequestException(400, "Поврежденный заголовок изображения: " + e.getMessage(), e);
+        }
+        if (pixels <= 0) {
+            throw new RequestException(400, "Неверный размер изображения в заголовке");
+        }
+        if (pixels > options.maxPixels) {
+            throw new RequestException(413, "Размер изображения превышает " + options.maxPixels + " пикселей");
+        }
+        return pixels;
+    }
+
+    /**
+     * Цикл потока-диспетчера: берет из очереди большое изображение или пакет малых и ожидает
+     * окончания их обработки, прежде чем взять следующие.
+     */
+    private void dispatch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Request> batch = nextBatch();
+                try {
+                    process(batch);
+                } catch (Throwable e) {
+                    // Ошибка пакета не останавливает диспетчер; запросы пакета, которые еще
+                    // не получили результата, завершаются с этой ошибкой
+                    e.printStackTrace();
+                    for (Request request : batch) {
+                        request.result.completeExceptionally(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Сервер остановлен
+        }
+    }
+
+    /**
+     * Ожидает запрос и возвращает его вместе с малыми изображениями, уже ожидающими в очереди
+     * подряд за ним; большое изображение возвращается одно.
+     */
+    private List<Request> nextBatch() throws InterruptedException {
+        List<Request> batch = new ArrayList<>();
+        Request first = queue.take();
+        batch.add(first);
+        if (first.pixels <= SMALL_IMAGE_PIXELS) {
+            // Диспетчер - единственный поток, забирающий запросы, поэтому peek и poll согласованы
+            for (Request next; batch.size() < options.batchSize
+                    && (next = queue.peek()) != null && next.pixels <= SMALL_IMAGE_PIXELS; ) {
+                batch.add(queue.poll());
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Обрабатывает большое изображение параллельно по полосам, одно малое изображение в потоке
+     * диспетчера или пакет малых изображений одновременно в пуле обработки.
+     */
+    private void process(List<Request> batch) {
+        Request first = batch.get(0);
+        if (batch.size() == 1) {
+            process(first, first.pixels > SMALL_IMAGE_PIXELS ? TiledExecutor.getDefault() : sequential);
+            return;
+        }
+        batches.incrementAndGet();
+        batchedImages.addAndGet(batch.size());
+        CompletableFuture<?>[] results = new CompletableFuture<?>[batch.size()];
+        for (int i = 0; i < results.length; i++) {
+            Request request = batch.get(i);
+            results[i] = CompletableFuture.runAsync(() -> process(request, sequential), workers);
+        }
+        // process не выбрасывает исключений, поэтому join ожидает окончания всех запросов пакета
+        CompletableFuture.allOf(results).join();
+    }
+
+    /**
+     * Обрабатывает один запрос и передает результат ожидающему обработчику.
+     */
+    private void process(Request request, TiledExecutor executor) {
+        Params params = request.params;
+        StageMetrics.Job job = StageMetrics.getDefault().job("http-" + request.number);
+        try {
+            BufferedImage image;
+            try {
+                // ImageIO.read закрывает поток сам
+                image = StageMetrics.time(job, "decode", request.pixels, 1,
+                        () -> ImageIO.read(new MemoryCacheImageInputStream(new ByteArrayInputStream(request.body))));
+            } catch (IOException | RuntimeException e) {
+                // Заголовок прочитан, но данные изображения усечены или повреждены
+                throw new RequestException(400, "Поврежденное изображение: " + e.getMessage(), e);
+            }
+            request.body = null;    // Сжатые данные больше не нужны
+            if (image == null) {
+                throw new RequestException(415, "Неподдерживаемый формат изображения");
+            }
+
+            ProcessingPipeline pipeline = new ProcessingPipeline().executor(executor).job(job);
+            if (params.noiseType != null) {
+                pipeline.noise(params.noiseType, params.density, params.seed);
+            }
+            if (params.channel != null) {
+                pipeline.channel(params.channel).singleChannel(params.singleChannel);
+            }
+            if (params.filterType != null) {
+                pipeline.filter(params.filterType, params.maskSize);
+            }
+            ProcessingPipeline.Result result = pipeline.run(image);
+
+            BufferedImage output;
+            switch (params.output) {
+                case NOISY:
+                    output = result.noisyImage();
+                    break;
+                case CHANNEL:
+                    output = result.channelImage();
+                    break;
+                default:
+                    output = result.filteredImage();
+                    break;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            params.exporter.write(output, bytes, job);
+            request.result.complete(bytes.toByteArray());
+        } catch (Throwable e) {
+            // Любая ошибка, включая OutOfMemoryError, передается обработчику запроса для ответа 500
+            request.result.completeExceptionally(e);
+        } finally {
+            job.finish();
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        send(exchange, status, (text + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length > 0 ? body.length : -1);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /**
+     * Возвращает процентиль отсортированных задержек в миллисекундах.
+     */
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1);
+        return sorted[index] / 1e6;
+    }
+
+    /**
+     * Результат последней стадии, который возвращается в ответе.
+     */
+    enum Output {
+        NOISY, CHANNEL, FILTERED
+    }
+
+    /**
+     * Запрос фильтрации в очереди.
+     */
+    private static final class Request {
+        final long number;
+        final Params params;
+        byte[] body;                    // Сжатое изображение; освобождается после декодирования
+        long pixels;                    // Размер изображения по заголовку
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        Request(long number, Params params, byte[] body) {
+            this.number = number;
+            this.params = params;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Ошибка запроса с кодом ответа HTTP.
+     */
+    private static final class RequestException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        RequestException(int status, String message, Throwable cause) {
+            super(message, cause);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Кольцевой буфер последних задержек.
+     */
+    private static final class Latencies {
+        private final long[] samples;
+        private int count;              // Всего добавлено значений
+
+        Latencies(int size) {
+            samples = new long[size];
+        }
+
+        synchronized void add(long nanos) {
+            samples[count % samples.length] = nanos;
+            count++;
+        }
+
+        synchronized long[] sorted() {
+            long[] result = Arrays.copyOf(samples, Math.min(count, samples.length));
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    /**
+     * Параметры обработки из строки запроса.
+     */
+    static final class Params {
+        SpatialFiltering.NoiseType noiseType;                           // Тип шума или null
+        double density = NoiseGenerator.DEFAULT_DENSITY;                // Плотность шума
+        long seed;                                                      // Зерно генератора шума
+        SpatialFiltering.Channel channel;                               // Выделяемый канал или null
+        boolean singleChannel;                                          // Фильтровать только канал
+        SpatialFiltering.FilterType filterType;                         // Тип фильтра или null
+        int maskSize = 3;                                               // Размер маски фильтра
+        Output output;                                                  // Возвращаемый результат
+        ImageExporter exporter = ImageExporter.of(SpatialFiltering.ExportFormat.PNG_FAST);
+
+        /**
+         * Разбирает строку запроса вида {@code noise=UNIPOLAR&density=10&filter=MEDIAN&mask=3}.
+         *
+         * @param query Строка запроса без декодирования или null.
+         * @return Параметры обработки.
+         * @throws IllegalArgumentException Если параметры заданы неверно.
+         */
+        static Params parse(String query) {
+            Params params = new Params();
+            for (String pair : query != null ? query.split("&") : new String[0]) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                int separator = pair.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Не указано значение параметра " + pair);
+                }
+                String name = URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8);
+                String value = URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8)
+                        .toUpperCase(Locale.ROOT);
+                switch (name) {
+                    case "noise":
+                        params.noiseType = SpatialFiltering.NoiseType.valueOf(value);
+                        break;
+                    case "density":
+                        params.density = Double.parseDouble(value) / 100;
+                        NoiseGenerator.noiseAmount(0, params.density);
+                        break;
+                    case "seed":
+                        params.seed = Long.parseLong(value);
+                        break;
+                    case "channel":
+                        params.channel = SpatialFiltering.Channel.valueOf(value);
+                        break;
+                    case "single":
+                        params.singleChannel = Boolean.parseBoolean(value);
+                        break;
+                    case "filter":
+                        params.filterType = SpatialFiltering.FilterType.valueOf(value);
+                        break;
+                    case "mask":
+                        params.maskSize = Integer.parseInt(value);
+                        if (params.maskSize < 1 || params.maskSize % 2 == 0) {
+                            throw new IllegalArgumentException("Размер маски должен быть нечетным: " + value);
+                        }
+                        break;
+                    case "output":
+                        params.output = Output.valueOf(value);
+                        break;
+                    case "format":
+                        params.exporter = ImageExporter.of(SpatialFiltering.ExportFormat.valueOf(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Неизвестный параметр: " + name);
+                }
+            }
+
+            // По умолчанию возвращается результат последней стадии
+            if (params.output == null) {
+                params.output = params.filterType != null ? Output.FILTERED
+                        : params.channel != null ? Output.CHANNEL
+                        : params.noiseType != null ? Output.NOISY : null;
+            }
+            if (params.output == null) {
+                throw new IllegalArgumentException("Не задано ни одной стадии: noise, channel или filter");
+            }
+            if ((params.output == Output.NOISY && params.noiseType == null)
+                    || (params.output == Output.CHANNEL && params.channel == null)
+                    || (params.output == Output.FILTERED && params.filterType == null)) {
+                throw new IllegalArgumentException("Стадия " + params.output + " не задана в запросе");
+            }
+            if (params.singleChannel && params.channel == null) {
+                throw new IllegalArgumentException("Для одноканального режима нужно выбрать канал");
+            }
+            return params;
+        }
+    }
+
+    /**
+     * Параметры сервера.
+     */
+    static final class Options {
+        int port = 8080;                                                // Порт
+        String bind = "127.0.0.1";                                      // Адрес
+        int workers = Runtime.getRuntime().availableProcessors();       // Потоки обработки пакетов
+        int queueCapacity = 16;                                         // Запросы в очереди и обработке
+        int batchSize = 8;                                              // Малые изображения в пакете
+        long maxBytes = 32L << 20;                                      // Наибольший размер тела запроса
+        long maxPixels = 40_000_000L;                                   // Наибольший размер изображения
+        long inflightPixels = Runtime.getRuntime().maxMemory() / 2 / BYTES_PER_PIXEL;   // Бюджет пикселей
+
+        /**
+         * Разбирает параметры командной строки.
+         *
+         * @param args Параметры после ключа {@code --serve}.
+         * @return Параметры сервера.
+         * @throws IllegalArgumentException Если параметры заданы неверно.
+         */
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Не указано значение параметра " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--port":
+                        options.port = Integer.parseInt(value);
+                        if (options.port < 0 || options.port > 65535) {
+                            throw new IllegalArgumentException("Неверный номер порта: " + value);
+                        }
+                        break;
+                    case "--bind":
+                        options.bind = value;
+                        break;
+                    case "--workers":
+                        options.workers = positive(arg, value);
+                        break;
+                    case "--queue":
+                        options.queueCapacity = positive(arg, value);
+                        break;
+                    case "--batch-size":
+                        options.batchSize = positive(arg, value);
+                        break;
+                    case "--max-bytes":
+                        options.maxBytes = positive(arg, value) * (1L << 20);
+                        break;
+                    case "--max-pixels":
+                        options.maxPixels = positive(arg, value) * 1_000_000L;
+                        break;
+                    case "--max-inflight-pixels":
+                        options.inflightPixels = positive(arg, value) * 1_000_000L;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+                }
+            }
+            return options;
+        }
+
+        private static int positive(String name, String value) {
+            int result = Integer.parseInt(value);
+            if (result < 1) {
+                throw new IllegalArgumentException("Значение " + name + " должно быть положительным: " + value);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.example;
+
+/**
+ * Среднегармонический фильтр на основе интегрального изображения (таблицы сумм).
+ * <p>
+ * Обратные значения {@code 1 / (c + 1)} вычисляются один раз для каждого пикселя и
+ * накапливаются в таблицу сумм, после чего сумма по любому окну находится за четыре
+ * обращения к таблице независимо от размера маски.
+ * <p>
+ * Обратные значения хранятся в фиксированной точке ({@link #SCALE}) в {@code long}, поэтому
+ * суммы по окну вычисляются точно и не теряют точность на больших изображениях, как это
+ * происходит с разностями больших сумм в {@code double}. Переполнения не возникает, пока
+ * изображение вместе с полями меньше 2^31 пикселей.
+ * <p>
+ * Средние по строке вычисляются ядром {@link RowKernel}. При сборке с профилем {@code jdk17} и
+ * запуске на Java 17+ с {@code --add-modules jdk.incubator.vector} автоматически используется
+ * векторное ядро {@code VectorHarmonicKernel}, иначе - скалярное. Векторное ядро можно
+ * отключить системным свойством {@value #VECTOR_PROPERTY}{@code =false}.
+ */
+final class HarmonicMeanFilter {
+
+    /**
+     * Системное свойство для отключения векторного ядра.
+     */
+    static final String VECTOR_PROPERTY = "dsp.vector";
+
+    /**
+     * Масштаб фиксированной точки для обратных значений.
+     */
+    static final double SCALE = 1L << 32;
+
+    /**
+     * Обратные значения {@code 1 / (c + 1)} для всех уровней яркости в фиксированной точке.
+     */
+    private static final long[] RECIPROCALS = new long[256];
+
+    static {
+        for (int c = 0; c < RECIPROCALS.length; c++) {
+            RECIPROCALS[c] = Math.round(SCALE / (c + 1));
+        }
+    }
+
+    /**
+     * Ядро для вычисления средних: векторное, если оно доступно, иначе скалярное.
+     */
+    private static final RowKernel KERNEL = loadKernel();
+
+    private HarmonicMeanFilter() {
+    }
+
+    /**
+     * Вычисление гармонических средних строки пикселей по таблице сумм.
+     */
+    interface RowKernel {
+        /**
+         * Записывает в {@code means} гармонические средние пикселей строки, ограниченные диапазоном [0, 255].
+         * Средние возвращаются в {@code double}, потому что преобразование векторов {@code double}
+         * в {@code int} на Java 17 не компилируется в векторные инструкции.
+         *
+         * @param table    Таблица сумм обратных значений.
+         * @param top      Начало строки таблицы над окном.
+         * @param bottom   Начало строки таблицы под окном.
+         * @param maskSize Размер маски фильтра.
+         * @param means    Массив для результата.
+         * @param width    Количество пикселей в строке.
+         */
+        void meanRow(long[] table, int top, int bottom, int maskSize, double[] means, int width);
+    }
+
+    /**
+     * Загружает векторное ядро, если оно собрано и Vector API доступен, иначе возвращает скалярное.
+     */
+    private static RowKernel loadKernel() {
+        if (Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) {
+            try {
+                Class<?> kernel = Class.forName("org.example.VectorHarmonicKernel");
+                return (RowKernel) kernel.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Ядро не собрано, собрано для более новой Java или модуль jdk.incubator.vector не подключен
+            }
+        }
+        return (table, top, bottom, maskSize, means, width) -> meanRow(table, top, bottom, maskSize, means, 0, width);
+    }
+
+    /**
+     * Применяет среднегармонический фильтр ко всем каналам изображения.
+     * Каждая полоса строит свою таблицу сумм и использует ее для всех каналов.
+     *
+     * @param source   Исходное изображение.
+     * @param target   Изображение того же размера для результата.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param executor Исполнитель, распределяющий полосы строк по потокам.
+     */
+    static void apply(PlanarImage source, PlanarImage target, int maskSize, TiledExecutor executor) {
+        apply(source, target, maskSize, executor, 0, source.getHeight());
+    }
+
+    /**
+     * Применяет фильтр ко всем каналам в диапазоне строк изображения; остальные строки
+     * результата не изменяются.
+     *
+     * @param source   Исходное изображение.
+     * @param target   Изображение того же размера для результата.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param executor Исполнитель, распределяющий полосы строк по потокам.
+     * @param firstRow Первая обрабатываемая строка (включительно).
+     * @param lastRow  Строка, следующая за последней обрабатываемой.
+     */
+    static void apply(PlanarImage source, PlanarImage target, int maskSize, TiledExecutor executor,
+                      int firstRow, int lastRow) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        executor.forEachBand(firstRow, lastRow, (fromRow, toRow) -> {
+            long[] table = new long[tableSize(width, toRow - fromRow, maskSize)];
+            for (int c = 0; c < source.getChannelCount(); c++) {
+                filterRows(source.getPlane(c), target.getPlane(c), width, height, maskSize, fromRow, toRow, table);
+            }
+        });
+    }
+
+    /**
+     * Применяет среднегармонический фильтр к полосе строк одного канала изображения.
+     * Таблица сумм строится только по строкам полосы и полям по {@code maskSize / 2} строк.
+     *
+     * @param src      Исходные значения канала (построчно, по одному байту на пиксель).
+     * @param dst      Массив для результата, того же размера, что и {@code src}.
+     * @param width    Ширина изображения.
+     * @param height   Высота изображения.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param fromRow  Первая обрабатываемая строка (включительно).
+     * @param toRow    Последняя обрабатываемая строка (исключительно).
+     * @param table    Таблица сумм размером не меньше {@code tableSize(width, toRow - fromRow, maskSize)};
+     *                 позволяет использовать одну таблицу для нескольких каналов.
+     */
+    static void filterRows(byte[] src, byte[] dst, int width, int height, int maskSize,
+                           int fromRow, int toRow, long[] table) {
+        // Вычисляем смещение маски относительно текущего пикселя
+        int offset = maskSize / 2;
+        buildTable(src, width, height, offset, fromRow, toRow, table);
+        meanRows(table, width, offset, maskSize, dst, fromRow, toRow);
+    }
+
+    /**
+     * Строит таблицу сумм обратных значений по полосе строк одного канала, расширенной
+     * на {@code padding} пикселей с каждой стороны повторением крайних пикселей.
+     * Таблица с полями для наибольшей маски подходит и для всех меньших масок.
+     *
+     * @param src     Исходные значения канала.
+     * @param width   Ширина изображения.
+     * @param height  Высота изображения.
+     * @param padding Ширина полей, не меньше половины размера маски.
+     * @param fromRow Первая строка полосы (включительно).
+     * @param toRow   Последняя строка полосы (исключительно).
+     * @param table   Таблица сумм размером не меньше {@code tableSize(width, toRow - fromRow, 2 * padding + 1)}.
+     */
+    static void buildTable(byte[] src, int width, int height, int padding, int fromRow, int toRow, long[] table) {
+        // Таблица имеет дополнительную нулевую строку и столбец
+        int stride = width + 2 * padding + 1;
+        int rows = toRow - fromRow + 2 * padding + 1;
+
+        for (int x = 0; x < stride; x++) {
+            table[x] = 0;
+        }
+        for (int py = 1; py < rows; py++) {
+            int srcRow = clamp(fromRow + py - 1 - padding, height) * width;
+            int row = py * stride;
+            table[row] = 0;
+
+            // Сумма по текущей строке складывается с суммой по всем строкам выше
+            long rowSum = 0;
+            for (int px = 1; px < stride; px++) {
+                rowSum += RECIPROCALS[src[srcRow + clamp(px - 1 - padding, width)] & 0xFF];
+                table[row + px] = table[row - stride + px] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * Записывает гармонические средние строк полосы по таблице сумм, построенной
+     * {@link #buildTable} с полями {@code padding}.
+     *
+     * @param table    Таблица сумм полосы.
+     * @param width    Ширина изображения.
+     * @param padding  Ширина полей таблицы, не меньше {@code maskSize / 2}.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param dst      Массив для результата.
+     * @param fromRow  Первая строка полосы (включительно).
+     * @param toRow    Последняя строка полосы (исключительно).
+     */
+    static void meanRows(long[] table, int width, int padding, int maskSize, byte[] dst, int fromRow, int toRow) {
+        int stride = width + 2 * padding + 1;
+        // Окно меньшей маски начинается на столько же строк ниже и столбцов правее начала таблицы
+        int shift = padding - maskSize / 2;
+
+        double[] means = new double[width];
+        for (int y = fromRow; y < toRow; y++) {
+            int top = (y - fromRow + shift) * stride + shift;
+            int bottom = top + maskSize * stride;
+            KERNEL.meanRow(table, top, bottom, maskSize, means, width);
+
+            int rowStart = y * width;
+            for (int x = 0; x < width; x++) {
+                dst[rowStart + x] = (byte) (int) means[x];
+            }
+        }
+    }
+
+    /**
+     * Скалярное вычисление гармонических средних для пикселей строки с {@code fromX} по {@code toX}
+     * (исключительно); используется и векторным ядром для хвоста строки.
+     */
+    static void meanRow(long[] table, int top, int bottom, int maskSize, double[] means, int fromX, int toX) {
+        int area = maskSize * maskSize;
+        for (int x = fromX; x < toX; x++) {
+            // Сумма обратных значений по окну за четыре обращения к таблице
+            long sum = table[bottom + x + maskSize] - table[top + x + maskSize]
+                    - table[bottom + x] + table[top + x];
+
+            // Вычисляем гармоническое среднее и ограничиваем его диапазоном [0, 255]
+            int mean = (int) (area / (sum / SCALE));
+            means[x] = Math.min(Math.max(mean, 0), 255);
+        }
+    }
+
+    /**
+     * Возвращает размер таблицы сумм, необходимый для полосы изображения заданного размера.
+     *
+     * @param width    Ширина изображения.
+     * @param height   Высота полосы.
+     * @param maskSize Размер маски фильтра.
+     * @return Количество элементов таблицы.
+     */
+    static int tableSize(int width, int height, int maskSize) {
+        int offset = maskSize / 2;
+        return Math.multiplyExact(width + 2 * offset + 1, height + 2 * offset + 1);
+    }
+
+    /**
+     * Ограничивает координату диапазоном [0, size - 1].
+     */
+    private static int clamp(int value, int size) {
+        return Math.min(Math.max(value, 0), size - 1);
+    }
+}
@@ -0,0 +1,240 @@
+package org.example;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Запись изображений в файлы с заданным форматом и уровнем сжатия.
+ * <p>
+ * Для PNG уровень сжатия deflate (от 0 - без сжатия до 9 - наибольшее сжатие) задается через
+ * {@link ImageWriteParam}. Быстрое сжатие (уровень 1) в несколько раз быстрее уровня по умолчанию
+ * при файлах немного большего размера и подходит для промежуточных результатов. Когда скорость
+ * важнее размера файла, изображения можно записывать в BMP без сжатия. Кодировщик BMP не
+ * поддерживает альфа-канал, поэтому изображения с прозрачностью перед записью в BMP
+ * накладываются на белый фон.
+ * <p>
+ * Метод {@link #writeAsync} кодирует изображения в общем пуле фоновых потоков, поэтому несколько
+ * изображений записываются одновременно, а вызывающий поток (например, поток событий Swing)
+ * не ожидает записи.
+ */
+final class ImageExporter {
+
+    /**
+     * Уровень сжатия PNG по умолчанию для кодировщика.
+     */
+    static final int DEFAULT_LEVEL = -1;
+
+    /**
+     * Наибольший уровень сжатия PNG.
+     */
+    static final int MAX_LEVEL = 9;
+
+    /**
+     * Количество потоков записи: по одному на каждое из трех сохраняемых изображений.
+     */
+    private static final int EXPORT_THREADS = 3;
+
+    private static volatile ExecutorService pool;
+
+    private final String format;    // Имя формата ImageIO ("png" или "bmp")
+    private final int level;        // Уровень сжатия PNG или DEFAULT_LEVEL
+
+    /**
+     * Создает экспортер.
+     *
+     * @param format Имя формата ImageIO, например {@code png} или {@code bmp}.
+     * @param level  Уровень сжатия PNG от 0 до {@value #MAX_LEVEL} или {@link #DEFAULT_LEVEL};
+     *               для других форматов не используется.
+     */
+    ImageExporter(String format, int level) {
+        if (level < DEFAULT_LEVEL || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("Уровень сжатия должен быть в диапазоне [0, 9]: " + level);
+        }
+        if (!ImageIO.getImageWritersByFormatName(format).hasNext()) {
+            throw new IllegalArgumentException("Не найден кодировщик формата " + format);
+        }
+        this.format = format.toLowerCase(Locale.ROOT);
+        this.level = level;
+    }
+
+    /**
+     * Возвращает экспортер для формата, выбранного в интерфейсе.
+     */
+    static ImageExporter of(SpatialFiltering.ExportFormat exportFormat) {
+        switch (exportFormat) {
+            case PNG:
+                return new ImageExporter("png", DEFAULT_LEVEL);
+            case PNG_FAST:
+                return new ImageExporter("png", 1);
+            case PNG_UNCOMPRESSED:
+                return new ImageExporter("png", 0);
+            case BMP:
+                return new ImageExporter("bmp", DEFAULT_LEVEL);
+            default:
+                throw new IllegalArgumentException("Неизвестный формат: " + exportFormat);
+        }
+    }
+
+    /**
+     * @return Расширение файлов формата.
+     */
+    String getExtension() {
+        return format;
+    }
+
+    /**
+     * Записывает изображение в файл, заменяя существующий файл. Запись учитывается в статистике
+     * стадий как {@code encode}.
+     *
+     * @param image Изображение.
+     * @param file  Путь к файлу.
+     * @param job   Задание для статистики стадий или null.
+     * @throws IOException Если формат не поддерживает изображение или запись не удалась.
+     */
+    void write(BufferedImage image, Path file, StageMetrics.Job job) throws IOException {
+        long pixels = (long) image.getWidth() * image.getHeight();
+        StageMetrics.time(job, "encode", pixels, 1, () -> {
+            BufferedImage encoded = compatibleImage(image);
+            ImageWriter writer = findWriter(encoded);
+            try {
+                // Как и ImageIO.write, удаляем старый файл: поток записи не укорачивает его
+                Files.deleteIfExists(file);
+                try (ImageOutputStream output = ImageIO.createImageOutputStream(file.toFile())) {
+                    if (output == null) {
+                        throw new IOException("Не удалось открыть файл " + file);
+                    }
+                    encode(writer, encoded, output);
+                }
+            } finally {
+                writer.dispose();
+            }
+        });
+    }
+
+    /**
+     * Записывает изображение в поток, например в ответ на запрос. Запись учитывается в статистике
+     * стадий как {@code encode}; поток не закрывается.
+     *
+     * @param image  Изображение.
+     * @param stream Поток для записи.
+     * @param job    Задание для статистики стадий или null.
+     * @throws IOException Если формат не поддерживает изображение или запись не удалась.
+     */
+    void write(BufferedImage image, OutputStream stream, StageMetrics.Job job) throws IOException {
+        long pixels = (long) image.getWidth() * image.getHeight();
+        StageMetrics.time(job, "encode", pixels, 1, () -> {
+            BufferedImage encoded = compatibleImage(image);
+            ImageWriter writer = findWriter(encoded);
+            // Буфер в памяти вместо временного файла, который ImageIO создает для потоков по умолчанию
+            try (ImageOutputStream output = new MemoryCacheImageOutputStream(stream)) {
+                encode(writer, encoded, output);
+            } finally {
+                writer.dispose();
+            }
+        });
+    }
+
+    /**
+     * Кодирует изображение с уровнем сжатия экспортера.
+     */
+    private void encode(ImageWriter writer, BufferedImage image, ImageOutputStream output) throws IOException {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (level != DEFAULT_LEVEL && format.equals("png")) {
+            // Кодировщик PNG вычисляет уровень как (int) (9 * (1 - quality));
+            // середина интервала уровня защищает от ошибок округления
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(Math.max(0f, 1f - (level + 0.5f) / MAX_LEVEL));
+        }
+        writer.setOutput(output);
+        writer.write(null, new IIOImage(image, null, null), param);
+    }
+
+    /**
+     * Записывает изображение в файл в фоновом потоке.
+     *
+     * @param image Изображение, которое не изменяется до окончания записи.
+     * @param file  Путь к файлу.
+     * @return Результат записи: путь к файлу или исключение.
+     */
+    CompletableFuture<Path> writeAsync(BufferedImage image, Path file) {
+        CompletableFuture<Path> result = new CompletableFuture<>();
+        getPool().execute(() -> {
+            try {
+                write(image, file, null);
+                result.complete(file);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Возвращает изображение, которое может записать кодировщик формата: для BMP изображение
+     * с альфа-каналом накладывается на белый фон, остальные изображения не изменяются.
+     */
+    private BufferedImage compatibleImage(BufferedImage image) {
+        if (!format.equals("bmp") || !image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = opaque.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return opaque;
+    }
+
+    private ImageWriter findWriter(BufferedImage image) throws IOException {
+        ImageTypeSpecifier type = ImageTypeSpecifier.createFromRenderedImage(image);
+        Iterator<ImageWriter> writers = ImageIO.getImageWriters(type, format);
+        if (!writers.hasNext()) {
+            throw new IOException("Формат " + format + " не поддерживает тип изображения " + image.getType());
+        }
+        return writers.next();
+    }
+
+    /**
+     * Возвращает общий пул потоков записи. Потоки пула не препятствуют завершению программы.
+     */
+    private static ExecutorService getPool() {
+        ExecutorService executor = pool;
+        if (executor == null) {
+            synchronized (ImageExporter.class) {
+                executor = pool;
+                if (executor == null) {
+                    AtomicInteger threadNumber = new AtomicInteger();
+                    executor = Executors.newFixedThreadPool(EXPORT_THREADS, task -> {
+                        Thread thread = new Thread(task, "export-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    pool = executor;
+                }
+            }
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,94 @@
+package org.example;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пирамида уменьшенных копий изображения для предварительного просмотра.
+ * <p>
+ * Уровень 0 - само изображение, каждый следующий уровень вдвое меньше предыдущего по обеим
+ * сторонам. Уровни строятся прореживанием (берется каждый второй пиксель каждой второй строки),
+ * а не усреднением: значения пикселей не изменяются, поэтому импульсный шум на уменьшенной копии
+ * остается импульсным с той же плотностью, и фильтры на ней дают такой же по характеру результат,
+ * как на исходном изображении. Маска фильтра при этом задается в пикселях уровня.
+ * <p>
+ * Уровни создаются при первом обращении и хранятся вместе с пирамидой.
+ */
+final class ImagePyramid {
+
+    private final List<BufferedImage> levels = new ArrayList<>();  // Созданные уровни, начиная с 0
+
+    /**
+     * Создает пирамиду изображения.
+     *
+     * @param image Изображение уровня 0; не копируется и не должно изменяться.
+     */
+    ImagePyramid(BufferedImage image) {
+        levels.add(image);
+    }
+
+    /**
+     * Возвращает номер первого уровня, который целиком помещается в область заданного размера.
+     * Если не помещается ни один уровень, возвращается последний уровень (размером до 1x1).
+     *
+     * @param maxWidth  Ширина области.
+     * @param maxHeight Высота области.
+     * @return Номер уровня.
+     */
+    int levelFor(int maxWidth, int maxHeight) {
+        BufferedImage image = levels.get(0);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int level = 0;
+        while ((width > maxWidth || height > maxHeight) && (width > 1 || height > 1)) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Возвращает уровень пирамиды, создавая недостающие уровни.
+     *
+     * @param level Номер уровня; 0 - исходное изображение.
+     * @return Изображение уровня того же типа, что и исходное.
+     */
+    synchronized BufferedImage level(int level) {
+        if (level < 0) {
+            throw new IllegalArgumentException("Номер уровня не может быть отрицательным: " + level);
+        }
+        while (levels.size() <= level) {
+            levels.add(decimate(levels.get(levels.size() - 1)));
+        }
+        return levels.get(level);
+    }
+
+    /**
+     * Уменьшает изображение вдвое, оставляя пиксели с четными координатами.
+     *
+     * @param image Исходное изображение.
+     * @return Изображение того же типа размером {@code (width + 1) / 2 x (height + 1) / 2}.
+     */
+    static BufferedImage decimate(BufferedImage image) {
+        int width = (image.getWidth() + 1) / 2;
+        int height = (image.getHeight() + 1) / 2;
+        WritableRaster source = image.getRaster();
+        WritableRaster target = source.createCompatibleWritableRaster(width, height);
+
+        // Элементы данных копируются без преобразования цвета, поэтому значения пикселей сохраняются
+        Object pixel = null;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixel = source.getDataElements(2 * x, 2 * y, pixel);
+                target.setDataElements(x, y, pixel);
+            }
+        }
+
+        ColorModel colorModel = image.getColorModel();
+        return new BufferedImage(colorModel, target, colorModel.isAlphaPremultiplied(), null);
+    }
+}
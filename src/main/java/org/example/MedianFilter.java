@@ -0,0 +1,381 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Медианный фильтр на основе скользящей гистограммы (алгоритм Хуанга).
+ * <p>
+ * Для каждой строки гистограмма окна строится один раз, а при сдвиге окна на один пиксель
+ * вправо из нее удаляется левый столбец маски и добавляется новый правый. Поэтому стоимость
+ * обработки пикселя растет линейно со стороной маски, а не с ее площадью.
+ * Границы изображения обрабатываются повторением крайних пикселей, как и при сортировке окна.
+ * <p>
+ * Для самых частых масок 3x3 и 5x5 медиана вычисляется сетями сравнений: каждое сравнение
+ * применяется сразу ко всей строке (по массиву на позицию маски), поэтому внутренние циклы
+ * состоят только из минимумов и максимумов без ветвлений и векторизуются JIT-компилятором.
+ */
+final class MedianFilter {
+
+    // Виды сравнений в сети: после сравнения на позиции a меньшее значение, на позиции b - большее,
+    // но если дальше нужно только одно из них, второе не вычисляется
+    private static final int MIN_MAX = 0;
+    private static final int MIN_ONLY = 1;
+    private static final int MAX_ONLY = 2;
+
+    /**
+     * Сеть сравнений для медианы 25 значений (маска 5x5), в тройках {@code (a, b, вид)}.
+     */
+    private static final int[] MEDIAN_25 = medianNetwork(25);
+
+    private MedianFilter() {
+    }
+
+    /**
+     * Применяет медианный фильтр ко всем каналам изображения.
+     *
+     * @param source   Исходное изображение.
+     * @param target   Изображение того же размера для результата.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param executor Исполнитель, распределяющий полосы строк по потокам.
+     */
+    static void apply(PlanarImage source, PlanarImage target, int maskSize, TiledExecutor executor) {
+        apply(source, target, maskSize, executor, 0, source.getHeight());
+    }
+
+    /**
+     * Применяет фильтр ко всем каналам в диапазоне строк изображения; остальные строки
+     * результата не изменяются.
+     *
+     * @param source   Исходное изображение.
+     * @param target   Изображение того же размера для результата.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param executor Исполнитель, распределяющий полосы строк по потокам.
+     * @param firstRow Первая обрабатываемая строка (включительно).
+     * @param lastRow  Строка, следующая за последней обрабатываемой.
+     */
+    static void apply(PlanarImage source, PlanarImage target, int maskSize, TiledExecutor executor,
+                      int firstRow, int lastRow) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        executor.forEachBand(firstRow, lastRow, (fromRow, toRow) -> {
+            for (int c = 0; c < source.getChannelCount(); c++) {
+                filterRows(source.getPlane(c), target.getPlane(c), width, height, maskSize, fromRow, toRow);
+            }
+        });
+    }
+
+    /**
+     * Применяет медианный фильтр к полосе строк одного канала изображения.
+     *
+     * @param src      Исходные значения канала (построчно, по одному байту на пиксель).
+     * @param dst      Массив для результата, того же размера, что и {@code src}.
+     * @param width    Ширина изображения.
+     * @param height   Высота изображения.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param fromRow  Первая обрабатываемая строка (включительно).
+     * @param toRow    Последняя обрабатываемая строка (исключительно).
+     */
+    static void filterRows(byte[] src, byte[] dst, int width, int height, int maskSize, int fromRow, int toRow) {
+        if (maskSize == 3) {
+            filterRows3(src, dst, width, height, fromRow, toRow);
+        } else if (maskSize == 5) {
+            filterRowsNetwork(src, dst, width, height, maskSize, MEDIAN_25, fromRow, toRow);
+        } else {
+            filterRowsHistogram(src, dst, width, height, maskSize, fromRow, toRow);
+        }
+    }
+
+    /**
+     * Медиана 3x3 через отсортированные столбцы.
+     * <p>
+     * Каждый столбец из трех значений сортируется один раз на строку и используется тремя
+     * соседними пикселями. Медиана девяти значений равна медиане трех чисел: наибольшего из
+     * минимумов столбцов, медианы средних значений и наименьшего из максимумов.
+     */
+    private static void filterRows3(byte[] src, byte[] dst, int width, int height, int fromRow, int toRow) {
+        // Строки маски с повторением крайнего пикселя слева и справа; после сортировки столбцов
+        // в них находятся минимумы, средние значения и максимумы столбцов
+        int[] lo = new int[width + 2];
+        int[] mid = new int[width + 2];
+        int[] hi = new int[width + 2];
+        // Значения двух следующих столбцов, перенесенные на позицию пикселя
+        int[] next = new int[width];
+        int[] last = new int[width];
+        int[] maxLo = new int[width];
+        int[] medMid = new int[width];
+        int[] minHi = new int[width];
+
+        for (int y = fromRow; y < toRow; y++) {
+            loadRow(src, clamp(y - 1, height) * width, width, 1, lo);
+            loadRow(src, y * width, width, 1, mid);
+            loadRow(src, clamp(y + 1, height) * width, width, 1, hi);
+
+            // Сортируем столбцы: lo <= mid <= hi
+            compareExchange(lo, mid, width + 2);
+            compareExchange(mid, hi, width + 2);
+            compareExchange(lo, mid, width + 2);
+
+            // Циклы со сдвинутыми индексами одного массива (lo[x + 1]) JIT не векторизует,
+            // поэтому соседние столбцы сначала копируются в отдельные массивы
+            System.arraycopy(lo, 1, next, 0, width);
+            System.arraycopy(lo, 2, last, 0, width);
+            for (int x = 0; x < width; x++) {
+                maxLo[x] = max(max(lo[x], next[x]), last[x]);
+            }
+            System.arraycopy(hi, 1, next, 0, width);
+            System.arraycopy(hi, 2, last, 0, width);
+            for (int x = 0; x < width; x++) {
+                minHi[x] = min(min(hi[x], next[x]), last[x]);
+            }
+            System.arraycopy(mid, 1, next, 0, width);
+            System.arraycopy(mid, 2, last, 0, width);
+            for (int x = 0; x < width; x++) {
+                medMid[x] = median3(mid[x], next[x], last[x]);
+            }
+
+            for (int x = 0; x < width; x++) {
+                medMid[x] = median3(maxLo[x], medMid[x], minHi[x]);
+            }
+            storeRow(medMid, width, dst, y * width);
+        }
+    }
+
+    /**
+     * Медиана через сеть сравнений, применяемую ко всем пикселям строки сразу.
+     *
+     * @param network Сеть сравнений для {@code maskSize * maskSize} значений.
+     */
+    private static void filterRowsNetwork(byte[] src, byte[] dst, int width, int height, int maskSize,
+                                          int[] network, int fromRow, int toRow) {
+        int offset = maskSize / 2;
+        int half = maskSize * maskSize / 2;
+        // Строки маски с повторением крайних пикселей слева и справа
+        int[][] rows = new int[maskSize][width + 2 * offset];
+        // Значения маски: lanes[k][x] - k-е значение окна пикселя x
+        int[][] lanes = new int[maskSize * maskSize][width];
+
+        for (int y = fromRow; y < toRow; y++) {
+            for (int k = 0; k < maskSize; k++) {
+                loadRow(src, clamp(y - offset + k, height) * width, width, offset, rows[k]);
+            }
+            for (int ky = 0; ky < maskSize; ky++) {
+                for (int kx = 0; kx < maskSize; kx++) {
+                    System.arraycopy(rows[ky], kx, lanes[ky * maskSize + kx], 0, width);
+                }
+            }
+
+            for (int i = 0; i < network.length; i += 3) {
+                int[] a = lanes[network[i]];
+                int[] b = lanes[network[i + 1]];
+                switch (network[i + 2]) {
+                    case MIN_MAX:
+                        compareExchange(a, b, width);
+                        break;
+                    case MIN_ONLY:
+                        for (int x = 0; x < width; x++) {
+                            a[x] = min(a[x], b[x]);
+                        }
+                        break;
+                    default:  // MAX_ONLY
+                        for (int x = 0; x < width; x++) {
+                            b[x] = max(a[x], b[x]);
+                        }
+                        break;
+                }
+            }
+
+            storeRow(lanes[half], width, dst, y * width);
+        }
+    }
+
+    /**
+     * Копирует строку канала в массив, дополняя ее слева и справа {@code pad} копиями крайних пикселей.
+     */
+    private static void loadRow(byte[] src, int rowStart, int width, int pad, int[] row) {
+        for (int x = 0; x < width; x++) {
+            row[pad + x] = src[rowStart + x] & 0xFF;
+        }
+        for (int p = 0; p < pad; p++) {
+            row[p] = row[pad];
+            row[pad + width + p] = row[pad + width - 1];
+        }
+    }
+
+    /**
+     * Упорядочивает пары значений: после вызова {@code a[x] <= b[x]} для всех x.
+     */
+    private static void compareExchange(int[] a, int[] b, int length) {
+        for (int x = 0; x < length; x++) {
+            int p = a[x];
+            int q = b[x];
+            a[x] = min(p, q);
+            b[x] = max(p, q);
+        }
+    }
+
+    /**
+     * Записывает строку результата в канал.
+     */
+    private static void storeRow(int[] row, int width, byte[] dst, int rowStart) {
+        for (int x = 0; x < width; x++) {
+            dst[rowStart + x] = (byte) row[x];
+        }
+    }
+
+    /**
+     * Медиана трех значений без ветвлений.
+     */
+    private static int median3(int a, int b, int c) {
+        return max(min(a, b), min(max(a, b), c));
+    }
+
+    /**
+     * Минимум без ветвлений и без {@link Math#min}: в отличие от него, сдвиги и сложения
+     * векторизуются JIT-компилятором в циклах по строке. Значения от 0 до 255, поэтому
+     * разность не переполняется.
+     */
+    private static int min(int a, int b) {
+        int d = a - b;
+        return b + (d & (d >> 31));
+    }
+
+    /**
+     * Максимум без ветвлений, см. {@link #min(int, int)}.
+     */
+    private static int max(int a, int b) {
+        int d = a - b;
+        return a - (d & (d >> 31));
+    }
+
+    /**
+     * Строит сеть сравнений для медианы {@code n} значений.
+     * <p>
+     * Берется сортирующая сеть Бэтчера (четно-нечетное слияние) для ближайшей степени двойки,
+     * из которой удаляются сравнения с позициями за пределами {@code n}: на этих позициях можно
+     * считать бесконечно большие значения, и такие сравнения ничего не меняют. Затем, двигаясь
+     * от конца сети, оставляются только сравнения, от которых зависит средняя позиция.
+     *
+     * @return Тройки {@code (a, b, вид)} в порядке применения.
+     */
+    private static int[] medianNetwork(int n) {
+        int size = Integer.highestOneBit(n - 1) << 1;
+        List<int[]> comparators = new ArrayList<>();
+        for (int p = 1; p < size; p <<= 1) {
+            for (int k = p; k >= 1; k >>= 1) {
+                for (int j = k % p; j + k < size; j += 2 * k) {
+                    for (int i = 0; i < k && i + j + k < size; i++) {
+                        int a = i + j;
+                        int b = i + j + k;
+                        if (a / (2 * p) == b / (2 * p) && b < n) {
+                            comparators.add(new int[]{a, b});
+                        }
+                    }
+                }
+            }
+        }
+
+        // Отбираем сравнения, влияющие на медиану, от последнего к первому
+        boolean[] needed = new boolean[n];
+        needed[n / 2] = true;
+        List<int[]> pruned = new ArrayList<>();
+        for (int i = comparators.size() - 1; i >= 0; i--) {
+            int a = comparators.get(i)[0];
+            int b = comparators.get(i)[1];
+            if (needed[a] || needed[b]) {
+                int kind = needed[a] && needed[b] ? MIN_MAX : needed[a] ? MIN_ONLY : MAX_ONLY;
+                pruned.add(new int[]{a, b, kind});
+                needed[a] = true;
+                needed[b] = true;
+            }
+        }
+        Collections.reverse(pruned);
+
+        int[] network = new int[pruned.size() * 3];
+        for (int i = 0; i < pruned.size(); i++) {
+            System.arraycopy(pruned.get(i), 0, network, i * 3, 3);
+        }
+        return network;
+    }
+
+    /**
+     * Медиана скользящей гистограммой для масок произвольного размера. Для масок 3x3 и 5x5
+     * дает тот же результат, что и сети сравнений, и служит для их проверки.
+     */
+    static void filterRowsHistogram(byte[] src, byte[] dst, int width, int height, int maskSize,
+                                            int fromRow, int toRow) {
+        // Вычисляем смещение маски относительно текущего пикселя
+        int offset = maskSize / 2;
+        // Индекс медианы в отсортированном окне
+        int half = maskSize * maskSize / 2;
+
+        int[] hist = new int[256];
+        // Начала строк, попадающих в маску (с учетом границ изображения)
+        int[] rows = new int[maskSize];
+
+        for (int y = fromRow; y < toRow; y++) {
+            for (int k = 0; k < maskSize; k++) {
+                rows[k] = clamp(y - offset + k, height) * width;
+            }
+
+            // Строим гистограмму окна для первого пикселя строки
+            Arrays.fill(hist, 0);
+            for (int kx = -offset; kx <= offset; kx++) {
+                int col = clamp(kx, width);
+                for (int row : rows) {
+                    hist[src[row + col] & 0xFF]++;
+                }
+            }
+
+            // Ищем медиану: med - текущее значение, below - количество значений меньше med
+            int med = 0;
+            int below = 0;
+            while (below + hist[med] <= half) {
+                below += hist[med];
+                med++;
+            }
+            dst[y * width] = (byte) med;
+
+            for (int x = 1; x < width; x++) {
+                int outCol = clamp(x - 1 - offset, width);
+                int inCol = clamp(x + offset, width);
+
+                // У краев изображения уходящий и приходящий столбцы совпадают
+                if (outCol != inCol) {
+                    for (int row : rows) {
+                        int out = src[row + outCol] & 0xFF;
+                        hist[out]--;
+                        if (out < med) {
+                            below--;
+                        }
+                        int in = src[row + inCol] & 0xFF;
+                        hist[in]++;
+                        if (in < med) {
+                            below++;
+                        }
+                    }
+
+                    // Сдвигаем медиану к новому положению
+                    while (below > half) {
+                        med--;
+                        below -= hist[med];
+                    }
+                    while (below + hist[med] <= half) {
+                        below += hist[med];
+                        med++;
+                    }
+                }
+                dst[y * width + x] = (byte) med;
+            }
+        }
+    }
+
+    /**
+     * Ограничивает координату диапазоном [0, size - 1].
+     */
+    private static int clamp(int value, int size) {
+        return Math.min(Math.max(value, 0), size - 1);
+    }
+}
@@ -0,0 +1,82 @@
+package org.example;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Генератор импульсного шума с воспроизводимым результатом.
+ * <p>
+ * Позиции шумовых пикселей выбираются алгоритмом Флойда: ровно {@code amount} различных
+ * позиций за {@code amount} обращений к генератору случайных чисел. Выбранные позиции
+ * отмечаются в битовом множестве, поэтому дополнительная память составляет один бит на пиксель,
+ * а не список объектов для всех пикселей изображения. При одинаковых изображении, плотности
+ * и зерне генератора шум получается одинаковым.
+ */
+final class NoiseGenerator {
+
+    /**
+     * Доля зашумляемых пикселей по умолчанию.
+     */
+    static final double DEFAULT_DENSITY = 0.1;
+
+    private NoiseGenerator() {
+    }
+
+    /**
+     * Возвращает количество пикселей, которые будут зашумлены.
+     *
+     * @param totalPixels Общее количество пикселей в изображении.
+     * @param density     Доля зашумляемых пикселей в диапазоне [0, 1].
+     * @return Количество шумовых пикселей.
+     */
+    static int noiseAmount(int totalPixels, double density) {
+        if (!(density >= 0 && density <= 1)) {
+            throw new IllegalArgumentException("Плотность шума должна быть в диапазоне [0, 1]: " + density);
+        }
+        return (int) (totalPixels * density);
+    }
+
+    /**
+     * Добавляет импульсный шум к изображению.
+     *
+     * @param image     Изображение, к которому добавляется шум.
+     * @param noiseType Тип шума (униполярный или биполярный).
+     * @param density   Доля зашумляемых пикселей в диапазоне [0, 1].
+     * @param seed      Зерно генератора случайных чисел.
+     * @return Индексы зашумленных пикселей ({@code y * width + x}).
+     */
+    static BitSet apply(PlanarImage image, SpatialFiltering.NoiseType noiseType, double density, long seed) {
+        Random rand = new Random(seed);
+        int totalPixels = image.getWidth() * image.getHeight();
+        int amount = noiseAmount(totalPixels, density);
+
+        byte[] red = image.getPlane(PlanarImage.RED);
+        byte[] green = image.getPlane(PlanarImage.GREEN);
+        byte[] blue = image.getPlane(PlanarImage.BLUE);
+        byte[] alpha = image.getAlpha();
+
+        // Алгоритм Флойда: на каждом шаге выбирается новая позиция, отличная от уже выбранных
+        BitSet chosen = new BitSet(totalPixels);
+        for (int j = totalPixels - amount; j < totalPixels; j++) {
+            int candidate = rand.nextInt(j + 1);
+            int i = chosen.get(candidate) ? j : candidate;
+            chosen.set(i);
+
+            byte value;
+            if (noiseType == SpatialFiltering.NoiseType.UNIPOLAR) {
+                value = (byte) 0xFF;  // Светлая точка
+            } else {  // Bipolar noise
+                value = rand.nextBoolean() ? 0 : (byte) 0xFF;  // Случайно выбираем темную или светлую точку
+            }
+
+            // Устанавливаем цвет пикселя на изображении
+            red[i] = value;
+            green[i] = value;
+            blue[i] = value;
+            if (alpha != null) {
+                alpha[i] = (byte) 0xFF;
+            }
+        }
+        return chosen;
+    }
+}
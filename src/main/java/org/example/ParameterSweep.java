@@ -0,0 +1,344 @@
+package org.example;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Подбор размера маски фильтра: фильтрация зашумленного изображения сразу всеми размерами маски
+ * и оценка результатов по PSNR и SSIM относительно исходного изображения.
+ * <p>
+ * Все размеры обрабатываются за один проход по полосам строк, пока полоса находится в кэше
+ * процессора. Для среднегармонического фильтра таблица сумм полосы строится один раз с полями
+ * для наибольшей маски, и средние для всех меньших масок вычисляются по ней же: отдельные
+ * запуски строили бы таблицу для каждого размера. Медианный фильтр использует для каждого
+ * размера свой самый быстрый алгоритм на той же полосе.
+ * <p>
+ * Оценки вычисляются параллельно по полосам блоков: PSNR - по среднеквадратичной ошибке всех
+ * каналов, SSIM - как среднее по каналам и непересекающимся блокам {@value #SSIM_BLOCK}x{@value #SSIM_BLOCK}.
+ * Результаты упорядочиваются по убыванию SSIM, а при равенстве - PSNR.
+ * <pre>
+ * ParameterSweep.Report report = new ParameterSweep(FilterType.MEDIAN, 3, 5, 7, 9, 11)
+ *         .run(originalImage, noisyImage);
+ * int maskSize = report.best().getMaskSize();
+ * </pre>
+ */
+final class ParameterSweep {
+
+    /**
+     * Размеры маски, доступные в интерфейсе.
+     */
+    static final int[] DEFAULT_MASK_SIZES = {3, 5, 7, 9, 11};
+
+    /**
+     * Сторона блока для вычисления SSIM.
+     */
+    static final int SSIM_BLOCK = 8;
+
+    // Константы SSIM для динамического диапазона 255: (0.01 * 255)^2 и (0.03 * 255)^2
+    private static final double C1 = 6.5025;
+    private static final double C2 = 58.5225;
+
+    private final SpatialFiltering.FilterType filterType;
+    private final int[] maskSizes;                   // Размеры маски по возрастанию
+    private TiledExecutor executor = TiledExecutor.getDefault();
+    private StageMetrics.Job job;                    // Задание для статистики стадий или null
+
+    /**
+     * Создает подбор размера маски.
+     *
+     * @param filterType Тип фильтра.
+     * @param maskSizes  Проверяемые размеры маски (нечетные числа).
+     */
+    ParameterSweep(SpatialFiltering.FilterType filterType, int... maskSizes) {
+        if (maskSizes.length == 0) {
+            throw new IllegalArgumentException("Не заданы размеры маски");
+        }
+        for (int maskSize : maskSizes) {
+            if (maskSize < 1 || maskSize % 2 == 0) {
+                throw new IllegalArgumentException("Размер маски должен быть нечетным: " + maskSize);
+            }
+        }
+        this.filterType = filterType;
+        this.maskSizes = Arrays.stream(maskSizes).sorted().distinct().toArray();
+    }
+
+    /**
+     * Задает исполнитель для параллельной фильтрации и оценки.
+     */
+    ParameterSweep executor(TiledExecutor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Задает задание, к которому относятся стадии подбора в статистике {@link StageMetrics}.
+     */
+    ParameterSweep job(StageMetrics.Job job) {
+        this.job = job;
+        return this;
+    }
+
+    /**
+     * Фильтрует зашумленное изображение всеми размерами маски и оценивает результаты.
+     *
+     * @param reference Исходное изображение без шума.
+     * @param noisy     Зашумленное изображение того же размера.
+     * @return Отчет с результатами, упорядоченными от лучшего к худшему.
+     */
+    Report run(BufferedImage reference, BufferedImage noisy) {
+        if (reference.getWidth() != noisy.getWidth() || reference.getHeight() != noisy.getHeight()) {
+            throw new IllegalArgumentException("Размеры исходного и зашумленного изображений не совпадают");
+        }
+        long start = System.nanoTime();
+        long pixels = (long) noisy.getWidth() * noisy.getHeight();
+
+        PlanarImage expected = StageMetrics.time(job, "copy", pixels, 1, () -> PlanarImage.fromImage(reference));
+        PlanarImage source = StageMetrics.time(job, "copy", pixels, 1, () -> PlanarImage.fromImage(noisy));
+
+        PlanarImage[] results = new PlanarImage[maskSizes.length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new PlanarImage(source.getWidth(), source.getHeight());
+        }
+        StageMetrics.time(job, "sweep." + filterType, pixels * maskSizes.length, executor.getParallelism(),
+                () -> filter(source, results));
+
+        Totals totals = new Totals(maskSizes.length);
+        StageMetrics.time(job, "score", pixels * maskSizes.length, executor.getParallelism(),
+                () -> score(expected, results, totals));
+
+        List<Score> scores = new ArrayList<>();
+        for (int i = 0; i < maskSizes.length; i++) {
+            scores.add(totals.score(i, maskSizes[i], pixels * expected.getChannelCount()));
+        }
+        scores.sort(Comparator.comparingDouble(Score::getSsim).thenComparingDouble(Score::getPsnr).reversed());
+        return new Report(filterType, scores, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Фильтрует изображение всеми размерами маски.
+     */
+    private void filter(PlanarImage source, PlanarImage[] results) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int channels = source.getChannelCount();
+        switch (filterType) {
+            case HARMONIC_MEAN:
+                // Одна таблица сумм с полями для наибольшей маски на полосу и канал
+                int padding = maskSizes[maskSizes.length - 1] / 2;
+                executor.forEachBand(height, (fromRow, toRow) -> {
+                    long[] table = new long[HarmonicMeanFilter.tableSize(width, toRow - fromRow, 2 * padding + 1)];
+                    for (int c = 0; c < channels; c++) {
+                        HarmonicMeanFilter.buildTable(source.getPlane(c), width, height, padding, fromRow, toRow, table);
+                        for (int i = 0; i < maskSizes.length; i++) {
+                            HarmonicMeanFilter.meanRows(table, width, padding, maskSizes[i], results[i].getPlane(c),
+                                    fromRow, toRow);
+                        }
+                    }
+                });
+                break;
+            case MEDIAN:
+                executor.forEachBand(height, (fromRow, toRow) -> {
+                    for (int c = 0; c < channels; c++) {
+                        for (int i = 0; i < maskSizes.length; i++) {
+                            MedianFilter.filterRows(source.getPlane(c), results[i].getPlane(c), width, height,
+                                    maskSizes[i], fromRow, toRow);
+                        }
+                    }
+                });
+                break;
+            case SWITCHING_MEDIAN:
+                // Импульсы определяются по всем каналам, поэтому размеры обрабатываются отдельными проходами
+                for (int i = 0; i < maskSizes.length; i++) {
+                    SwitchingMedianFilter.apply(source, results[i], maskSizes[i], executor);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный тип фильтра: " + filterType);
+        }
+    }
+
+    /**
+     * Вычисляет суммы квадратов ошибок и SSIM блоков для всех результатов параллельно по полосам блоков.
+     */
+    private void score(PlanarImage expected, PlanarImage[] results, Totals totals) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        int blockRows = (height + SSIM_BLOCK - 1) / SSIM_BLOCK;
+        executor.forEachBand(blockRows, (fromBlock, toBlock) -> {
+            Totals band = new Totals(results.length);
+            int fromRow = fromBlock * SSIM_BLOCK;
+            int toRow = Math.min(height, toBlock * SSIM_BLOCK);
+            for (int c = 0; c < expected.getChannelCount(); c++) {
+                byte[] x = expected.getPlane(c);
+                for (int i = 0; i < results.length; i++) {
+                    scoreBlocks(x, results[i].getPlane(c), width, fromRow, toRow, band, i);
+                }
+            }
+            totals.add(band);
+        });
+    }
+
+    /**
+     * Добавляет к итогам результата {@code index} оценки блоков в строках с {@code fromRow} по {@code toRow}.
+     */
+    private static void scoreBlocks(byte[] x, byte[] y, int width, int fromRow, int toRow, Totals totals, int index) {
+        for (int top = fromRow; top < toRow; top += SSIM_BLOCK) {
+            int bottom = Math.min(toRow, top + SSIM_BLOCK);
+            for (int left = 0; left < width; left += SSIM_BLOCK) {
+                int right = Math.min(width, left + SSIM_BLOCK);
+
+                // Суммы значений, квадратов и произведений блока дают и ошибку, и статистики SSIM;
+                // для блока из 64 пикселей они помещаются в int
+                int sumX = 0;
+                int sumY = 0;
+                int sumXX = 0;
+                int sumYY = 0;
+                int sumXY = 0;
+                for (int row = top; row < bottom; row++) {
+                    int rowStart = row * width;
+                    for (int i = rowStart + left; i < rowStart + right; i++) {
+                        int a = x[i] & 0xFF;
+                        int b = y[i] & 0xFF;
+                        sumX += a;
+                        sumY += b;
+                        sumXX += a * a;
+                        sumYY += b * b;
+                        sumXY += a * b;
+                    }
+                }
+
+                double n = (bottom - top) * (right - left);
+                double meanX = sumX / n;
+                double meanY = sumY / n;
+                double varianceX = sumXX / n - meanX * meanX;
+                double varianceY = sumYY / n - meanY * meanY;
+                double covariance = sumXY / n - meanX * meanY;
+                double ssim = (2 * meanX * meanY + C1) * (2 * covariance + C2)
+                        / ((meanX * meanX + meanY * meanY + C1) * (varianceX + varianceY + C2));
+
+                totals.squaredErrors[index] += sumXX + sumYY - 2 * sumXY;
+                totals.ssim[index] += ssim;
+                totals.blocks[index]++;
+            }
+        }
+    }
+
+    /**
+     * Накопленные оценки всех результатов.
+     */
+    private static final class Totals {
+        private final long[] squaredErrors;     // Сумма квадратов ошибок по всем каналам
+        private final double[] ssim;            // Сумма SSIM блоков по всем каналам
+        private final long[] blocks;            // Количество блоков по всем каналам
+
+        Totals(int count) {
+            squaredErrors = new long[count];
+            ssim = new double[count];
+            blocks = new long[count];
+        }
+
+        synchronized void add(Totals band) {
+            for (int i = 0; i < blocks.length; i++) {
+                squaredErrors[i] += band.squaredErrors[i];
+                ssim[i] += band.ssim[i];
+                blocks[i] += band.blocks[i];
+            }
+        }
+
+        /**
+         * Возвращает оценку результата {@code index} по {@code samples} значениям всех каналов.
+         */
+        Score score(int index, int maskSize, long samples) {
+            double mse = (double) squaredErrors[index] / samples;
+            double psnr = 10 * Math.log10(255.0 * 255.0 / mse);
+            return new Score(maskSize, psnr, ssim[index] / blocks[index]);
+        }
+    }
+
+    /**
+     * Оценка результата фильтрации с одним размером маски.
+     */
+    static final class Score {
+        private final int maskSize;
+        private final double psnr;
+        private final double ssim;
+
+        Score(int maskSize, double psnr, double ssim) {
+            this.maskSize = maskSize;
+            this.psnr = psnr;
+            this.ssim = ssim;
+        }
+
+        int getMaskSize() {
+            return maskSize;
+        }
+
+        /**
+         * @return Пиковое отношение сигнал/шум в децибелах; бесконечность, если результат совпадает с исходным.
+         */
+        double getPsnr() {
+            return psnr;
+        }
+
+        /**
+         * @return Индекс структурного сходства от -1 до 1; 1 - полное совпадение.
+         */
+        double getSsim() {
+            return ssim;
+        }
+    }
+
+    /**
+     * Результаты подбора, упорядоченные от лучшего к худшему.
+     */
+    static final class Report {
+        private final SpatialFiltering.FilterType filterType;
+        private final List<Score> scores;
+        private final double millis;
+
+        private Report(SpatialFiltering.FilterType filterType, List<Score> scores, double millis) {
+            this.filterType = filterType;
+            this.scores = Collections.unmodifiableList(scores);
+            this.millis = millis;
+        }
+
+        SpatialFiltering.FilterType getFilterType() {
+            return filterType;
+        }
+
+        List<Score> getScores() {
+            return scores;
+        }
+
+        /**
+         * @return Лучший результат.
+         */
+        Score best() {
+            return scores.get(0);
+        }
+
+        /**
+         * @return Время подбора в миллисекундах.
+         */
+        double getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(String.format(Locale.ROOT,
+                    "Фильтр %s, время подбора %.0f мс%n", filterType, millis));
+            for (int i = 0; i < scores.size(); i++) {
+                Score score = scores.get(i);
+                result.append(String.format(Locale.ROOT, "%d. маска %2dx%-2d  PSNR %6.2f дБ  SSIM %.4f%n",
+                        i + 1, score.getMaskSize(), score.getMaskSize(), score.getPsnr(), score.getSsim()));
+            }
+            return result.toString();
+        }
+    }
+}
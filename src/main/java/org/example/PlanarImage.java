@@ -0,0 +1,481 @@
+package org.example;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.BitSet;
+
+/**
+ * Изображение, хранящее каждый канал цвета в отдельном массиве байтов.
+ * <p>
+ * Фильтры и генераторы шума работают с массивами каналов напрямую, без обращений к
+ * {@link BufferedImage#getRGB(int, int)} и создания объектов {@link java.awt.Color} для каждого
+ * пикселя. Для изображений с растрами {@link DataBufferInt} и {@link DataBufferByte} в цветовом
+ * пространстве sRGB ({@code TYPE_INT_RGB}, {@code TYPE_INT_ARGB}, {@code TYPE_3BYTE_BGR},
+ * {@code TYPE_4BYTE_ABGR} и т.п.) импорт и экспорт читают и пишут данные растра напрямую,
+ * остальные изображения обрабатываются построчно через {@code getRGB}/{@code setRGB}.
+ */
+final class PlanarImage {
+    /**
+     * Индексы каналов цвета.
+     */
+    static final int RED = 0;
+    static final int GREEN = 1;
+    static final int BLUE = 2;
+
+    private final int width;            // Ширина изображения
+    private final int height;           // Высота изображения
+    private final byte[][] planes;      // Значения каналов цвета (R, G, B или один канал), построчно
+    private byte[] alpha;               // Альфа-канал или null для непрозрачного изображения
+
+    /**
+     * Создает непрозрачное изображение с тремя каналами, заполненными нулями.
+     *
+     * @param width  Ширина изображения.
+     * @param height Высота изображения.
+     */
+    PlanarImage(int width, int height) {
+        this(width, height, 3);
+    }
+
+    /**
+     * Создает непрозрачное изображение с заданным количеством каналов, заполненных нулями.
+     * Одноканальные изображения используются для обработки одного выделенного канала
+     * и экспортируются через {@link #toGrayImage(int)}.
+     *
+     * @param width    Ширина изображения.
+     * @param height   Высота изображения.
+     * @param channels Количество каналов (1 или 3).
+     */
+    PlanarImage(int width, int height, int channels) {
+        this.width = width;
+        this.height = height;
+        int size = Math.multiplyExact(width, height);
+        this.planes = new byte[channels][size];
+    }
+
+    private PlanarImage(int width, int height, byte[][] planes) {
+        this.width = width;
+        this.height = height;
+        this.planes = planes;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Количество каналов цвета.
+     */
+    int getChannelCount() {
+        return planes.length;
+    }
+
+    /**
+     * Возвращает массив значений канала (без копирования).
+     *
+     * @param channel Индекс канала ({@link #RED}, {@link #GREEN} или {@link #BLUE}).
+     * @return Значения канала, построчно по одному байту на пиксель.
+     */
+    byte[] getPlane(int channel) {
+        return planes[channel];
+    }
+
+    /**
+     * @return Альфа-канал или {@code null}, если изображение непрозрачное.
+     */
+    byte[] getAlpha() {
+        return alpha;
+    }
+
+    /**
+     * Делает изображение полупрозрачным, создавая альфа-канал, заполненный нулями, если его нет.
+     *
+     * @return Альфа-канал.
+     */
+    byte[] createAlpha() {
+        if (alpha == null) {
+            alpha = new byte[planes[0].length];
+        }
+        return alpha;
+    }
+
+    /**
+     * Возвращает одноканальное изображение из указанного канала. Массив канала не копируется,
+     * поэтому изменения видны в обоих изображениях.
+     *
+     * @param channel Индекс канала.
+     * @return Одноканальное изображение.
+     */
+    PlanarImage channel(int channel) {
+        return new PlanarImage(width, height, new byte[][]{planes[channel]});
+    }
+
+    /**
+     * Записывает указанный канал в новое изображение {@code TYPE_BYTE_GRAY}: один байт
+     * на пиксель вместо трех каналов, два из которых нулевые.
+     *
+     * @param channel Индекс канала.
+     * @return Изображение в оттенках серого со значениями канала.
+     */
+    BufferedImage toGrayImage(int channel) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        writeGray(image, planes[channel], 0, height);
+        return image;
+    }
+
+    /**
+     * Читает пиксели изображения в новое планарное изображение.
+     *
+     * @param image Исходное изображение.
+     * @return Планарная копия изображения.
+     */
+    static PlanarImage fromImage(BufferedImage image) {
+        PlanarImage result = new PlanarImage(image.getWidth(), image.getHeight());
+        if (image.getColorModel().hasAlpha()) {
+            result.alpha = new byte[result.planes[RED].length];
+        }
+
+        WritableRaster raster = image.getRaster();
+        if (isPackedInt(image)) {
+            result.readPackedInt(raster);
+        } else if (isInterleavedByte(image)) {
+            result.readInterleavedByte(raster);
+        } else {
+            result.readRgb(image);
+        }
+        return result;
+    }
+
+    /**
+     * Записывает пиксели в изображение того же размера.
+     * Если у планарного изображения нет альфа-канала, пиксели записываются непрозрачными.
+     *
+     * @param image Изображение, в которое записываются пиксели.
+     */
+    void writeTo(BufferedImage image) {
+        write(image, new byte[][]{planes[RED], planes[GREEN], planes[BLUE], alpha}, 0, height);
+    }
+
+    /**
+     * Записывает строки с {@code fromRow} по {@code toRow} в изображение того же размера, не изменяя
+     * остальные строки. Позволяет выводить результат по мере обработки полос. Одноканальное
+     * изображение записывается в изображение {@code TYPE_BYTE_GRAY}, как в {@link #toGrayImage(int)}.
+     *
+     * @param image   Изображение, в которое записываются пиксели.
+     * @param fromRow Первая записываемая строка (включительно).
+     * @param toRow   Строка, следующая за последней записываемой.
+     */
+    void writeTo(BufferedImage image, int fromRow, int toRow) {
+        if (planes.length == 1) {
+            writeGray(image, planes[0], fromRow, toRow);
+        } else {
+            write(image, new byte[][]{planes[RED], planes[GREEN], planes[BLUE], alpha}, fromRow, toRow);
+        }
+    }
+
+    /**
+     * Записывает в изображение только указанный канал цвета, зануляя остальные каналы,
+     * и делает пиксели непрозрачными. Выделение канала выполняется во время записи,
+     * без промежуточной копии изображения.
+     *
+     * @param image   Изображение того же размера, в которое записываются пиксели.
+     * @param channel Индекс сохраняемого канала.
+     */
+    void writeChannelTo(BufferedImage image, int channel) {
+        byte[][] bands = new byte[4][];
+        bands[channel] = planes[channel];
+        write(image, bands, 0, height);
+    }
+
+    /**
+     * Записывает в изображение только отмеченные пиксели.
+     * <p>
+     * Для изображений с прямым доступом к растру ({@link #hasDirectAccess}) запись всех пикселей
+     * не изменяет неотмеченные пиксели, поэтому изображение записывается целиком. Для остальных изображений
+     * преобразование через {@code getRGB}/{@code setRGB} может изменить значения (например,
+     * у изображений в оттенках серого), поэтому записываются только отмеченные пиксели.
+     *
+     * @param image  Изображение того же размера, из которого было прочитано это изображение.
+     * @param pixels Индексы пикселей ({@code y * width + x}), которые нужно записать.
+     */
+    void writeTo(BufferedImage image, BitSet pixels) {
+        if (hasDirectAccess(image)) {
+            writeTo(image);
+            return;
+        }
+        for (int i = pixels.nextSetBit(0); i >= 0; i = pixels.nextSetBit(i + 1)) {
+            int a = alpha != null ? alpha[i] & 0xFF : 0xFF;
+            image.setRGB(i % width, i / width, a << 24
+                    | (planes[RED][i] & 0xFF) << 16
+                    | (planes[GREEN][i] & 0xFF) << 8
+                    | (planes[BLUE][i] & 0xFF));
+        }
+    }
+
+    /**
+     * Создает пустое изображение того же типа и размера, что и образец.
+     *
+     * @param template Образец изображения.
+     * @return Новое изображение с той же цветовой моделью и расположением данных растра.
+     */
+    static BufferedImage createCompatibleImage(BufferedImage template) {
+        ColorModel colorModel = template.getColorModel();
+        WritableRaster raster = template.getRaster()
+                .createCompatibleWritableRaster(template.getWidth(), template.getHeight());
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Записывает каналы в строки изображения. Отсутствующие каналы цвета записываются нулями,
+     * отсутствующий альфа-канал - непрозрачным.
+     *
+     * @param bands   Массивы значений красного, зеленого, синего и альфа-канала (элементы могут быть null).
+     * @param fromRow Первая записываемая строка (включительно).
+     * @param toRow   Строка, следующая за последней записываемой.
+     */
+    private void write(BufferedImage image, byte[][] bands, int fromRow, int toRow) {
+        checkSize(image);
+
+        WritableRaster raster = image.getRaster();
+        if (isPackedInt(image)) {
+            writePackedInt(raster, bands, fromRow, toRow);
+        } else if (isInterleavedByte(image)) {
+            writeInterleavedByte(raster, bands, image.getColorModel().hasAlpha(), fromRow, toRow);
+        } else {
+            writeRgb(image, bands, fromRow, toRow);
+        }
+    }
+
+    /**
+     * Копирует строки канала в изображение {@code TYPE_BYTE_GRAY}, созданное конструктором
+     * {@link BufferedImage}: его растр хранит строки подряд, по байту на пиксель.
+     */
+    private void writeGray(BufferedImage image, byte[] plane, int fromRow, int toRow) {
+        checkSize(image);
+        if (image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+            throw new IllegalArgumentException("Один канал записывается только в изображение TYPE_BYTE_GRAY");
+        }
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(plane, fromRow * width, data, fromRow * width, (toRow - fromRow) * width);
+    }
+
+    private void checkSize(BufferedImage image) {
+        if (image.getWidth() != width || image.getHeight() != height) {
+            throw new IllegalArgumentException("Размеры изображений не совпадают");
+        }
+    }
+
+    /**
+     * Проверяет, читаются ли и записываются ли пиксели изображения напрямую через растр.
+     * Для таких изображений чтение и последующая запись не изменяют значения пикселей.
+     *
+     * @param image Изображение.
+     * @return true, если для изображения используется прямой доступ к растру.
+     */
+    static boolean hasDirectAccess(BufferedImage image) {
+        return isPackedInt(image) || isInterleavedByte(image);
+    }
+
+    /**
+     * Проверяет, хранит ли изображение 8-битные компоненты sRGB, упакованные в int.
+     */
+    private static boolean isPackedInt(BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        SampleModel sampleModel = image.getSampleModel();
+        return colorModel instanceof DirectColorModel
+                && isPlainSrgb(colorModel)
+                && sampleModel instanceof SinglePixelPackedSampleModel
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && hasByteSamples(sampleModel);
+    }
+
+    /**
+     * Проверяет, хранит ли изображение 8-битные компоненты sRGB в чередующемся байтовом растре.
+     */
+    private static boolean isInterleavedByte(BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        SampleModel sampleModel = image.getSampleModel();
+        return colorModel instanceof ComponentColorModel
+                && isPlainSrgb(colorModel)
+                && sampleModel instanceof ComponentSampleModel
+                && image.getRaster().getDataBuffer() instanceof DataBufferByte
+                && image.getRaster().getDataBuffer().getNumBanks() == 1
+                && hasByteSamples(sampleModel);
+    }
+
+    private static boolean isPlainSrgb(ColorModel colorModel) {
+        ColorSpace colorSpace = colorModel.getColorSpace();
+        return colorSpace.isCS_sRGB() && !colorModel.isAlphaPremultiplied();
+    }
+
+    private static boolean hasByteSamples(SampleModel sampleModel) {
+        for (int size : sampleModel.getSampleSize()) {
+            if (size != 8) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Индекс элемента буфера данных для пикселя (0, 0) растра.
+     */
+    private static int originIndex(WritableRaster raster, int band) {
+        int x = -raster.getSampleModelTranslateX();
+        int y = -raster.getSampleModelTranslateY();
+        SampleModel sampleModel = raster.getSampleModel();
+        int offset = sampleModel instanceof ComponentSampleModel
+                ? ((ComponentSampleModel) sampleModel).getOffset(x, y, band)
+                : ((SinglePixelPackedSampleModel) sampleModel).getOffset(x, y);
+        return raster.getDataBuffer().getOffset() + offset;
+    }
+
+    private void readPackedInt(WritableRaster raster) {
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int[] shifts = sampleModel.getBitOffsets();
+        int stride = sampleModel.getScanlineStride();
+        int origin = originIndex(raster, 0);
+
+        byte[] red = planes[RED];
+        byte[] green = planes[GREEN];
+        byte[] blue = planes[BLUE];
+        for (int y = 0; y < height; y++) {
+            int in = origin + y * stride;
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = data[in + x];
+                red[out + x] = (byte) (pixel >>> shifts[0]);
+                green[out + x] = (byte) (pixel >>> shifts[1]);
+                blue[out + x] = (byte) (pixel >>> shifts[2]);
+                if (alpha != null) {
+                    alpha[out + x] = (byte) (pixel >>> shifts[3]);
+                }
+            }
+        }
+    }
+
+    private void writePackedInt(WritableRaster raster, byte[][] bands, int fromRow, int toRow) {
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int[] shifts = sampleModel.getBitOffsets();
+        int stride = sampleModel.getScanlineStride();
+        int origin = originIndex(raster, 0);
+        boolean hasAlphaBand = shifts.length > 3;
+
+        byte[] red = bands[RED];
+        byte[] green = bands[GREEN];
+        byte[] blue = bands[BLUE];
+        byte[] opacity = bands[3];
+        for (int y = fromRow; y < toRow; y++) {
+            int in = y * width;
+            int out = origin + y * stride;
+            for (int x = 0; x < width; x++) {
+                int pixel = 0;
+                if (red != null) {
+                    pixel |= (red[in + x] & 0xFF) << shifts[0];
+                }
+                if (green != null) {
+                    pixel |= (green[in + x] & 0xFF) << shifts[1];
+                }
+                if (blue != null) {
+                    pixel |= (blue[in + x] & 0xFF) << shifts[2];
+                }
+                if (hasAlphaBand) {
+                    int a = opacity != null ? opacity[in + x] & 0xFF : 0xFF;
+                    pixel |= a << shifts[3];
+                }
+                data[out + x] = pixel;
+            }
+        }
+    }
+
+    private void readInterleavedByte(WritableRaster raster) {
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int pixelStride = sampleModel.getPixelStride();
+        int stride = sampleModel.getScanlineStride();
+        int bands = alpha != null ? 4 : 3;
+
+        for (int band = 0; band < bands; band++) {
+            byte[] plane = band < 3 ? planes[band] : alpha;
+            int origin = originIndex(raster, band);
+            for (int y = 0; y < height; y++) {
+                int in = origin + y * stride;
+                int out = y * width;
+                for (int x = 0; x < width; x++, in += pixelStride) {
+                    plane[out + x] = data[in];
+                }
+            }
+        }
+    }
+
+    private void writeInterleavedByte(WritableRaster raster, byte[][] bands, boolean hasAlphaBand,
+                                      int fromRow, int toRow) {
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int pixelStride = sampleModel.getPixelStride();
+        int stride = sampleModel.getScanlineStride();
+        int bandCount = hasAlphaBand ? 4 : 3;
+
+        for (int band = 0; band < bandCount; band++) {
+            byte[] plane = bands[band];
+            // Отсутствующий канал цвета записывается нулями, альфа-канал - непрозрачным
+            byte fill = band < 3 ? 0 : (byte) 0xFF;
+            int origin = originIndex(raster, band);
+            for (int y = fromRow; y < toRow; y++) {
+                int in = y * width;
+                int out = origin + y * stride;
+                for (int x = 0; x < width; x++, out += pixelStride) {
+                    data[out] = plane != null ? plane[in + x] : fill;
+                }
+            }
+        }
+    }
+
+    private void readRgb(BufferedImage image) {
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                planes[RED][out + x] = (byte) (row[x] >> 16);
+                planes[GREEN][out + x] = (byte) (row[x] >> 8);
+                planes[BLUE][out + x] = (byte) row[x];
+                if (alpha != null) {
+                    alpha[out + x] = (byte) (row[x] >>> 24);
+                }
+            }
+        }
+    }
+
+    private void writeRgb(BufferedImage image, byte[][] bands, int fromRow, int toRow) {
+        int[] row = new int[width];
+        for (int y = fromRow; y < toRow; y++) {
+            int in = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = (bands[3] != null ? bands[3][in + x] & 0xFF : 0xFF) << 24;
+                for (int c = RED; c <= BLUE; c++) {
+                    if (bands[c] != null) {
+                        pixel |= (bands[c][in + x] & 0xFF) << (16 - 8 * c);
+                    }
+                }
+                row[x] = pixel;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+}
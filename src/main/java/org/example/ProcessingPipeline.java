@@ -0,0 +1,374 @@
+package org.example;
+
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+import java.util.concurrent.CancellationException;
+
+/**
+ * План обработки изображения: добавление шума, выделение канала и фильтрация за один проход.
+ * <p>
+ * Исходное изображение читается в планарный буфер один раз, и это чтение заменяет копирование:
+ * шум добавляется прямо в этот буфер, фильтр пишет во второй буфер, а канал выделяется во время
+ * записи результата. Таким образом, для любой комбинации стадий используется не больше двух
+ * рабочих буферов, а результаты записываются в изображения только по запросу. Если исходное
+ * изображение уже прочитано в планарный буфер, например из {@link RawImageCache}, план выполняется
+ * прямо над ним ({@link #run(PlanarImage, int)}) без копирования.
+ * <p>
+ * В одноканальном режиме ({@link #singleChannel}) фильтруется только выделенный канал,
+ * а канал и результат фильтрации возвращаются как изображения {@code TYPE_BYTE_GRAY}:
+ * втрое меньше вычислений и памяти для результата.
+ * <p>
+ * С обработчиком полос ({@link #progress}) фильтр применяется полосами строк сверху вниз,
+ * и каждая готовая полоса передается обработчику, например для вывода на экран до окончания
+ * фильтрации. Между полосами проверяется флаг прерывания потока, поэтому выполнение в фоновой
+ * задаче можно отменить, прервав ее поток.
+ * <p>
+ * Время и память каждой стадии учитываются в {@link StageMetrics}: чтение исходного изображения
+ * и запись результатов - как {@code copy}, зашумление - {@code noise}, выделение канала -
+ * {@code channel}, фильтрация - {@code filter.<тип фильтра>}.
+ * <pre>
+ * ProcessingPipeline.Result result = new ProcessingPipeline()
+ *         .noise(NoiseType.UNIPOLAR, 0.1, seed)
+ *         .channel(Channel.R)
+ *         .filter(FilterType.MEDIAN, 3)
+ *         .run(originalImage);
+ * </pre>
+ */
+final class ProcessingPipeline {
+
+    private SpatialFiltering.NoiseType noiseType;    // Тип шума или null, если шум не добавляется
+    private double density;                          // Плотность шума
+    private long seed;                               // Зерно генератора шума
+    private SpatialFiltering.Channel channel;        // Выделяемый канал или null
+    private boolean singleChannel;                   // Фильтровать только выделенный канал
+    private SpatialFiltering.FilterType filterType;  // Тип фильтра или null
+    private int maskSize;                            // Размер маски фильтра
+    private TiledExecutor executor = TiledExecutor.getDefault();
+    private int stripHeight;                         // Высота полосы при постепенной фильтрации
+    private StripListener stripListener;             // Обработчик готовых полос или null
+    private StageMetrics.Job job;                    // Задание для статистики стадий или null
+
+    /**
+     * Обработчик полос результата фильтрации.
+     */
+    interface StripListener {
+        /**
+         * Вызывается после фильтрации строк с {@code fromRow} (включительно) по {@code toRow}
+         * (исключительно); эти строки результата больше не изменяются.
+         *
+         * @param filtered Результат фильтрации; в одноканальном режиме - одноканальное изображение.
+         */
+        void stripFiltered(PlanarImage filtered, int fromRow, int toRow);
+    }
+
+    /**
+     * Добавляет стадию зашумления.
+     */
+    ProcessingPipeline noise(SpatialFiltering.NoiseType noiseType, double density, long seed) {
+        NoiseGenerator.noiseAmount(0, density);
+        this.noiseType = noiseType;
+        this.density = density;
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Добавляет стадию выделения канала (из зашумленного изображения).
+     */
+    ProcessingPipeline channel(SpatialFiltering.Channel channel) {
+        this.channel = channel;
+        return this;
+    }
+
+    /**
+     * Включает одноканальный режим: фильтруется только выделенный канал, а изображения канала
+     * и результата фильтрации имеют тип {@code TYPE_BYTE_GRAY}. Требует стадии выделения канала.
+     */
+    ProcessingPipeline singleChannel(boolean singleChannel) {
+        this.singleChannel = singleChannel;
+        return this;
+    }
+
+    /**
+     * Добавляет стадию фильтрации (зашумленного изображения).
+     */
+    ProcessingPipeline filter(SpatialFiltering.FilterType filterType, int maskSize) {
+        if (maskSize < 1 || maskSize % 2 == 0) {
+            throw new IllegalArgumentException("Размер маски должен быть нечетным: " + maskSize);
+        }
+        this.filterType = filterType;
+        this.maskSize = maskSize;
+        return this;
+    }
+
+    /**
+     * Задает исполнитель для параллельной фильтрации.
+     */
+    ProcessingPipeline executor(TiledExecutor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Включает постепенную фильтрацию полосами строк с передачей готовых полос обработчику.
+     *
+     * @param stripHeight Высота полосы в строках.
+     * @param listener    Обработчик готовых полос; вызывается в потоке, выполняющем план.
+     */
+    ProcessingPipeline progress(int stripHeight, StripListener listener) {
+        if (stripHeight < 1) {
+            throw new IllegalArgumentException("Высота полосы должна быть положительной: " + stripHeight);
+        }
+        this.stripHeight = stripHeight;
+        this.stripListener = listener;
+        return this;
+    }
+
+    /**
+     * Задает задание, к которому относятся стадии плана в статистике {@link StageMetrics}.
+     */
+    ProcessingPipeline job(StageMetrics.Job job) {
+        this.job = job;
+        return this;
+    }
+
+    /**
+     * Выполняет план обработки.
+     *
+     * @param image Исходное изображение; не изменяется.
+     * @return Результаты обработки.
+     * @throws CancellationException Если поток был прерван во время постепенной фильтрации.
+     */
+    Result run(BufferedImage image) {
+        checkChannel();
+        long pixels = (long) image.getWidth() * image.getHeight();
+
+        // Единственное чтение исходного изображения; дальше шум добавляется прямо в этот буфер
+        PlanarImage source = StageMetrics.time(job, "copy", pixels, 1, () -> PlanarImage.fromImage(image));
+        return run(image, source, image.getType());
+    }
+
+    /**
+     * Выполняет план обработки над изображением, уже прочитанным в планарный буфер.
+     *
+     * @param source Исходное изображение с тремя каналами; шум добавляется прямо в него.
+     * @param type   Тип {@link BufferedImage} с прямым доступом к растру
+     *               ({@link PlanarImage#hasDirectAccess}) для изображений результатов.
+     * @return Результаты обработки.
+     * @throws CancellationException Если поток был прерван во время постепенной фильтрации.
+     */
+    Result run(PlanarImage source, int type) {
+        checkChannel();
+        if (source.getChannelCount() != 3) {
+            throw new IllegalArgumentException("Поддерживаются только изображения с тремя каналами");
+        }
+        return run(null, source, type);
+    }
+
+    private void checkChannel() {
+        if (singleChannel && channel == null) {
+            throw new IllegalStateException("Для одноканального режима нужно выбрать канал");
+        }
+    }
+
+    /**
+     * Выполняет стадии плана после чтения исходного изображения.
+     *
+     * @param image Исходное изображение или null, если оно прочитано сразу в планарный буфер.
+     */
+    private Result run(BufferedImage image, PlanarImage source, int type) {
+        long pixels = (long) source.getWidth() * source.getHeight();
+
+        BitSet noisePixels = null;
+        if (noiseType != null) {
+            noisePixels = StageMetrics.time(job, "noise", pixels, 1,
+                    () -> NoiseGenerator.apply(source, noiseType, density, seed));
+        }
+
+        PlanarImage filtered = null;
+        if (filterType != null) {
+            int height = source.getHeight();
+            PlanarImage target = new PlanarImage(source.getWidth(), height, singleChannel ? 1 : 3);
+            StageMetrics.time(job, "filter." + filterType, pixels, executor.getParallelism(),
+                    () -> filter(source, target, height));
+            filtered = target;
+        }
+
+        return new Result(image, type, source, noisePixels, channel, singleChannel, filtered, job);
+    }
+
+    /**
+     * Применяет фильтр плана ко всему изображению, постепенно, если задан обработчик полос.
+     */
+    private void filter(PlanarImage source, PlanarImage filtered, int height) {
+        if (stripListener == null) {
+            filter(source, filtered, 0, height);
+            return;
+        }
+        for (int fromRow = 0; fromRow < height; fromRow += stripHeight) {
+            // Прерывание потока означает отмену: оставшиеся полосы не обрабатываются
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Обработка прервана");
+            }
+            int toRow = Math.min(height, fromRow + stripHeight);
+            filter(source, filtered, fromRow, toRow);
+            stripListener.stripFiltered(filtered, fromRow, toRow);
+        }
+    }
+
+    /**
+     * Применяет фильтр плана к диапазону строк.
+     */
+    private void filter(PlanarImage source, PlanarImage filtered, int fromRow, int toRow) {
+        if (!singleChannel) {
+            applyFilter(source, filtered, filterType, maskSize, executor, fromRow, toRow);
+        } else if (filterType == SpatialFiltering.FilterType.SWITCHING_MEDIAN) {
+            // Импульсы определяются по всем каналам, а фильтруется только выделенный
+            SwitchingMedianFilter.applyToChannel(source, channel.ordinal(), filtered, maskSize, executor,
+                    fromRow, toRow);
+        } else {
+            // Фильтруем только выделенный канал, читая его из буфера без копирования
+            applyFilter(source.channel(channel.ordinal()), filtered, filterType, maskSize, executor,
+                    fromRow, toRow);
+        }
+    }
+
+    /**
+     * Применяет фильтр заданного типа ко всем каналам изображения.
+     *
+     * @param source     Исходное изображение.
+     * @param target     Изображение того же размера для результата.
+     * @param filterType Тип фильтра.
+     * @param maskSize   Размер маски фильтра.
+     * @param executor   Исполнитель для параллельной фильтрации.
+     */
+    static void applyFilter(PlanarImage source, PlanarImage target, SpatialFiltering.FilterType filterType,
+                            int maskSize, TiledExecutor executor) {
+        applyFilter(source, target, filterType, maskSize, executor, 0, source.getHeight());
+    }
+
+    /**
+     * Применяет фильтр заданного типа ко всем каналам в диапазоне строк изображения.
+     *
+     * @param source     Исходное изображение.
+     * @param target     Изображение того же размера для результата.
+     * @param filterType Тип фильтра.
+     * @param maskSize   Размер маски фильтра.
+     * @param executor   Исполнитель для параллельной фильтрации.
+     * @param firstRow   Первая обрабатываемая строка (включительно).
+     * @param lastRow    Строка, следующая за последней обрабатываемой.
+     */
+    static void applyFilter(PlanarImage source, PlanarImage target, SpatialFiltering.FilterType filterType,
+                            int maskSize, TiledExecutor executor, int firstRow, int lastRow) {
+        switch (filterType) {
+            case MEDIAN:
+                MedianFilter.apply(source, target, maskSize, executor, firstRow, lastRow);
+                break;
+            case HARMONIC_MEAN:
+                HarmonicMeanFilter.apply(source, target, maskSize, executor, firstRow, lastRow);
+                break;
+            case SWITCHING_MEDIAN:
+                SwitchingMedianFilter.apply(source, target, maskSize, executor, firstRow, lastRow);
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный тип фильтра: " + filterType);
+        }
+    }
+
+    /**
+     * Результаты обработки. Изображения создаются при обращении к ним и имеют тот же тип,
+     * что и исходное изображение.
+     */
+    static final class Result {
+        private final BufferedImage original;        // Исходное изображение или null
+        private final int type;                      // Тип изображений результатов без исходного
+        private final PlanarImage source;            // Исходное (возможно, зашумленное) изображение
+        private final BitSet noisePixels;            // Зашумленные пиксели или null
+        private final SpatialFiltering.Channel channel;
+        private final boolean singleChannel;         // Канал и результат в оттенках серого
+        private final PlanarImage filtered;          // Отфильтрованное изображение или null
+        private final StageMetrics.Job job;          // Задание для статистики стадий или null
+
+        private Result(BufferedImage original, int type, PlanarImage source, BitSet noisePixels,
+                       SpatialFiltering.Channel channel, boolean singleChannel, PlanarImage filtered,
+                       StageMetrics.Job job) {
+            this.original = original;
+            this.type = type;
+            this.source = source;
+            this.noisePixels = noisePixels;
+            this.channel = channel;
+            this.singleChannel = singleChannel;
+            this.filtered = filtered;
+            this.job = job;
+        }
+
+        private BufferedImage time(String stage, StageMetrics.Stage<BufferedImage, RuntimeException> body) {
+            return StageMetrics.time(job, stage, (long) source.getWidth() * source.getHeight(), 1, body);
+        }
+
+        /**
+         * Создает изображение результата того же типа, что и исходное изображение.
+         */
+        private BufferedImage createImage() {
+            return original != null ? PlanarImage.createCompatibleImage(original)
+                    : new BufferedImage(source.getWidth(), source.getHeight(), type);
+        }
+
+        /**
+         * @return Зашумленное изображение или null, если шум не добавлялся.
+         */
+        BufferedImage noisyImage() {
+            if (noisePixels == null) {
+                return null;
+            }
+            return time("copy", () -> {
+                BufferedImage image = createImage();
+                if (original == null || PlanarImage.hasDirectAccess(original)) {
+                    // Запись всех пикселей без преобразований совпадает с копией исходного изображения
+                    source.writeTo(image);
+                } else {
+                    // Копируем исходный растр и записываем в него только зашумленные пиксели
+                    image.setData(original.getRaster());
+                    source.writeTo(image, noisePixels);
+                }
+                return image;
+            });
+        }
+
+        /**
+         * @return Изображение с выделенным каналом или null, если канал не выделялся;
+         * в одноканальном режиме - изображение {@code TYPE_BYTE_GRAY}.
+         */
+        BufferedImage channelImage() {
+            if (channel == null) {
+                return null;
+            }
+            return time("channel", () -> {
+                if (singleChannel) {
+                    return source.toGrayImage(channel.ordinal());
+                }
+                BufferedImage image = createImage();
+                source.writeChannelTo(image, channel.ordinal());
+                return image;
+            });
+        }
+
+        /**
+         * @return Отфильтрованное изображение или null, если фильтр не применялся;
+         * в одноканальном режиме - отфильтрованный канал в изображении {@code TYPE_BYTE_GRAY}.
+         */
+        BufferedImage filteredImage() {
+            if (filtered == null) {
+                return null;
+            }
+            return time("copy", () -> {
+                if (singleChannel) {
+                    return filtered.toGrayImage(0);
+                }
+                BufferedImage image = createImage();
+                filtered.writeTo(image);
+                return image;
+            });
+        }
+    }
+}
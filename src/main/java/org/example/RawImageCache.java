@@ -0,0 +1,296 @@
+package org.example;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Кэш декодированных исходных изображений в несжатом планарном формате.
+ * <p>
+ * При первом чтении файл PNG/JPEG декодируется через {@link ImageIO}, и его каналы сохраняются
+ * в каталоге кэша в файле формата:
+ * <pre>
+ * int magic = 'DSPR'; int version; int type; int width; int height; int channels; long key;
+ * byte[width * height] R, G, B [, A]
+ * </pre>
+ * (числа в порядке big-endian, {@code type} - тип {@link BufferedImage}, {@code key} - ключ
+ * изображения {@link ResultCache#imageKey}). При следующих чтениях каждый канал читается из файла
+ * прямо в массив {@link PlanarImage}, без декодирования, что в десятки раз быстрее декодирования PNG.
+ * Это обычный файловый кэш: отображение файла в память ничего не дало бы, потому что фильтры
+ * работают с массивами {@code byte[]}, и каналы все равно пришлось бы копировать из отображения.
+ * <p>
+ * Пакетный режим передает планарное изображение из {@link #load} прямо в
+ * {@link ProcessingPipeline#run(PlanarImage, int)}, поэтому прочитанные каналы остаются
+ * единственной копией пикселей до фильтрации. {@link #read} создает из них {@link BufferedImage},
+ * что добавляет вторую копию: интерфейсу нужно само изображение.
+ * <p>
+ * Имя файла кэша содержит хэш пути, размер и время изменения исходного файла, поэтому
+ * измененный файл декодируется заново. Кэшируются только изображения с прямым доступом к растру
+ * ({@link PlanarImage#hasDirectAccess}), для которых планарная копия восстанавливает растр без
+ * изменений; остальные изображения всегда декодируются.
+ */
+final class RawImageCache {
+
+    private static final int MAGIC = 0x44535052;   // "DSPR"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 6 * Integer.BYTES + Long.BYTES;
+
+    private static volatile RawImageCache defaultCache;
+
+    private final Path directory;       // Каталог кэша или null
+
+    /**
+     * Создает кэш.
+     *
+     * @param directory Каталог кэша или {@code null}, если изображения всегда декодируются.
+     */
+    RawImageCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Возвращает общий кэш в каталоге из системного свойства {@value ResultCache#DIRECTORY_PROPERTY}.
+     */
+    static RawImageCache getDefault() {
+        RawImageCache cache = defaultCache;
+        if (cache == null) {
+            synchronized (RawImageCache.class) {
+                cache = defaultCache;
+                if (cache == null) {
+                    String directory = System.getProperty(ResultCache.DIRECTORY_PROPERTY);
+                    cache = new RawImageCache(directory != null ? Paths.get(directory) : null);
+                    defaultCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Читает изображение из файла кэша или декодирует его и сохраняет в кэше.
+     *
+     * @param file Файл изображения.
+     * @return Изображение или null, если формат не поддерживается.
+     * @throws IOException Если возникла ошибка при чтении файла.
+     */
+    BufferedImage read(Path file) throws IOException {
+        Entry entry = load(file);
+        return entry != null ? entry.toImage() : null;
+    }
+
+    /**
+     * Читает изображение из файла кэша или декодирует его и сохраняет в кэше, не создавая
+     * {@link BufferedImage} при попадании в кэш.
+     *
+     * @param file Файл изображения.
+     * @return Изображение или null, если формат не поддерживается.
+     * @throws IOException Если возникла ошибка при чтении файла.
+     */
+    Entry load(Path file) throws IOException {
+        if (directory == null) {
+            BufferedImage image = ImageIO.read(file.toFile());
+            return image != null ? new Entry(image, null, image.getType(), null) : null;
+        }
+        Path rawFile = directory.resolve(rawName(file));
+        if (Files.isRegularFile(rawFile)) {
+            try {
+                Entry entry = readRaw(rawFile);
+                if (entry != null) {
+                    return entry;
+                }
+            } catch (IOException | RuntimeException e) {
+                // Поврежденный файл кэша считается промахом и перезаписывается
+            }
+        }
+
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) {
+            return null;
+        }
+        if (image.getType() == BufferedImage.TYPE_CUSTOM || !PlanarImage.hasDirectAccess(image)) {
+            return new Entry(image, null, image.getType(), null);
+        }
+        // Планарная копия нужна для записи в кэш и затем используется вместо повторного чтения растра
+        Entry entry = new Entry(image, PlanarImage.fromImage(image), image.getType(), ResultCache.imageKey(image));
+        try {
+            // Запись через временный файл, чтобы другие потоки и процессы не прочитали его частично
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, rawFile.getFileName().toString(), ".tmp");
+            try {
+                write(entry.planar, entry.type, entry.key, temp);
+                Files.move(temp, rawFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // Кэш необязателен: изображение уже декодировано
+            System.err.println("Не удалось сохранить изображение в кэш: " + e);
+        }
+        return entry;
+    }
+
+    /**
+     * Записывает каналы изображения в файл несжатого планарного формата.
+     *
+     * @param image Планарное изображение с тремя каналами.
+     * @param type  Тип {@link BufferedImage}, который создается при чтении.
+     * @param key   Ключ изображения {@link ResultCache#imageKey} (16 шестнадцатеричных цифр).
+     * @param file  Путь к файлу.
+     * @throws IOException Если запись не удалась.
+     */
+    static void write(PlanarImage image, int type, String key, Path file) throws IOException {
+        if (image.getChannelCount() != 3) {
+            throw new IllegalArgumentException("Поддерживаются только изображения с тремя каналами");
+        }
+        byte[] alpha = image.getAlpha();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(type)
+                .putInt(image.getWidth())
+                .putInt(image.getHeight())
+                .putInt(alpha != null ? 4 : 3)
+                .putLong(Long.parseUnsignedLong(key, 16));
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            for (int c = 0; c < 3; c++) {
+                writeFully(channel, ByteBuffer.wrap(image.getPlane(c)));
+            }
+            if (alpha != null) {
+                writeFully(channel, ByteBuffer.wrap(alpha));
+            }
+        }
+    }
+
+    /**
+     * Читает файл несжатого планарного формата.
+     *
+     * @param file Путь к файлу.
+     * @return Изображение или null, если файл записан в другом формате или другой версии.
+     * @throws IOException Если чтение не удалось.
+     */
+    static Entry readRaw(Path file) throws IOException {
+        // RandomAccessFile читает в массив напрямую, а FileChannel читал бы в массив через
+        // временный прямой буфер размером с канал, который остается в кэше потока
+        try (RandomAccessFile input = new RandomAccessFile(file.toFile(), "r")) {
+            long size = input.length();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            int type = input.readInt();
+            int width = input.readInt();
+            int height = input.readInt();
+            int channels = input.readInt();
+            long key = input.readLong();
+            if (width <= 0 || height <= 0 || (channels != 3 && channels != 4)
+                    || size != HEADER_SIZE + (long) width * height * channels) {
+                return null;
+            }
+            // Тип проверяется по изображению 1x1, чтобы не выделять растр полного размера
+            BufferedImage probe = new BufferedImage(1, 1, type);
+            if (!PlanarImage.hasDirectAccess(probe) || probe.getColorModel().hasAlpha() != (channels == 4)) {
+                return null;
+            }
+
+            // Каналы читаются из файла прямо в массивы планарного изображения
+            PlanarImage planar = new PlanarImage(width, height);
+            for (int c = 0; c < 3; c++) {
+                input.readFully(planar.getPlane(c));
+            }
+            if (channels == 4) {
+                input.readFully(planar.createAlpha());
+            }
+            return new Entry(null, planar, type, String.format("%016x", key));
+        }
+    }
+
+    /**
+     * Возвращает имя файла кэша: имя исходного файла, хэш его полного пути, размер и время изменения.
+     */
+    private static String rawName(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return String.format("%s-%08x-%x-%x.raw", file.getFileName(),
+                file.toAbsolutePath().normalize().toString().hashCode(),
+                attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Прочитанное изображение: декодированное, планарное из кэша или оба сразу после записи в кэш.
+     */
+    static final class Entry {
+        private final BufferedImage image;      // Декодированное изображение или null
+        private final PlanarImage planar;       // Каналы изображения или null, если оно не кэшируется
+        private final int type;                 // Тип BufferedImage
+        private final String key;               // Ключ ResultCache или null, если он не вычислен
+
+        private Entry(BufferedImage image, PlanarImage planar, int type, String key) {
+            this.image = image;
+            this.planar = planar;
+            this.type = type;
+            this.key = key;
+        }
+
+        int getWidth() {
+            return planar != null ? planar.getWidth() : image.getWidth();
+        }
+
+        int getHeight() {
+            return planar != null ? planar.getHeight() : image.getHeight();
+        }
+
+        /**
+         * @return Каналы изображения или null, если изображение не кэшируется; используются
+         * одним потребителем, который может их изменять.
+         */
+        PlanarImage getPlanar() {
+            return planar;
+        }
+
+        /**
+         * @return Тип {@link BufferedImage} изображения.
+         */
+        int getType() {
+            return type;
+        }
+
+        /**
+         * @return Ключ изображения {@link ResultCache#imageKey}; для файлов кэша хранится в заголовке.
+         */
+        String key() {
+            return key != null ? key : ResultCache.imageKey(image);
+        }
+
+        /**
+         * @return Изображение; при чтении из кэша создается из каналов.
+         */
+        BufferedImage toImage() {
+            if (image != null) {
+                return image;
+            }
+            BufferedImage result = new BufferedImage(planar.getWidth(), planar.getHeight(), type);
+            planar.writeTo(result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package org.example;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Кэш результатов обработки с ключами по содержимому изображения и параметрам операций.
+ * <p>
+ * Ключ результата строится из хэша пикселей исходного изображения ({@link #imageKey}) и параметров
+ * всех операций, через которые он получен ({@link #key}), например
+ * {@code 9f3c...-noise-UNIPOLAR-0.1-0-filter-MEDIAN-3}. Поэтому результат зашумления можно
+ * использовать повторно при изменении только параметров фильтра.
+ * <p>
+ * Изображения хранятся в памяти с вытеснением давно не использованных (LRU), пока их общий
+ * размер не превышает заданного. Если указан каталог, результаты дополнительно сохраняются
+ * в нем в формате PNG и читаются оттуда при промахе в памяти, в том числе в следующих запусках.
+ * Декодер PNG возвращает изображения своего типа (например, {@code TYPE_3BYTE_BGR} вместо
+ * {@code TYPE_INT_RGB}), поэтому тип изображения записывается в имя файла
+ * ({@code <ключ>.<тип>.png}) и восстанавливается при чтении.
+ * Изображения из кэша используются совместно и не должны изменяться.
+ */
+final class ResultCache {
+
+    /**
+     * Системное свойство для размера кэша в памяти по умолчанию (в мегабайтах).
+     */
+    static final String SIZE_PROPERTY = "dsp.cache.mb";
+
+    /**
+     * Системное свойство для каталога кэша на диске; по умолчанию кэш хранится только в памяти.
+     */
+    static final String DIRECTORY_PROPERTY = "dsp.cache.dir";
+
+    /**
+     * Размер кэша в памяти по умолчанию в мегабайтах.
+     */
+    private static final int DEFAULT_SIZE_MB = 256;
+
+    /**
+     * Запись на диск с быстрым сжатием: файлы кэша - промежуточные результаты.
+     */
+    private static final ImageExporter DISK_EXPORTER = new ImageExporter("png", 1);
+
+    private static volatile ResultCache defaultCache;
+
+    private final long maxBytes;        // Наибольший общий размер изображений в памяти
+    private final Path directory;       // Каталог кэша на диске или null
+    private long bytes;                 // Текущий общий размер изображений в памяти
+
+    // Изображения в порядке обращения: первое - давно не использованное
+    private final LinkedHashMap<String, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Создает кэш.
+     *
+     * @param maxBytes  Наибольший общий размер изображений в памяти; 0 отключает кэш в памяти.
+     * @param directory Каталог кэша на диске или {@code null}, если кэш хранится только в памяти.
+     */
+    ResultCache(long maxBytes, Path directory) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Размер кэша не может быть отрицательным: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+    }
+
+    /**
+     * Возвращает общий кэш с параметрами из системных свойств {@value #SIZE_PROPERTY}
+     * и {@value #DIRECTORY_PROPERTY}.
+     */
+    static ResultCache getDefault() {
+        ResultCache cache = defaultCache;
+        if (cache == null) {
+            synchronized (ResultCache.class) {
+                cache = defaultCache;
+                if (cache == null) {
+                    long maxBytes = Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE_MB) * (1L << 20);
+                    String directory = System.getProperty(DIRECTORY_PROPERTY);
+                    cache = new ResultCache(maxBytes, directory != null ? Paths.get(directory) : null);
+                    defaultCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Вычисляет ключ изображения по его размерам, типу и значениям пикселей.
+     *
+     * @param image Изображение.
+     * @return 64-битный хэш в шестнадцатеричной записи.
+     */
+    static String imageKey(BufferedImage image) {
+        Raster raster = image.getRaster();
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        // FNV-1a по элементам растра, строка за строкой
+        long hash = 0xCBF29CE484222325L;
+        hash = mix(hash, width);
+        hash = mix(hash, height);
+        hash = mix(hash, image.getType());
+        hash = mix(hash, raster.getNumBands());
+
+        Object row = null;
+        for (int y = 0; y < height; y++) {
+            row = raster.getDataElements(0, y, width, 1, row);
+            if (row instanceof int[]) {
+                for (int value : (int[]) row) {
+                    hash = mix(hash, value);
+                }
+            } else if (row instanceof byte[]) {
+                for (byte value : (byte[]) row) {
+                    hash = mix(hash, value);
+                }
+            } else if (row instanceof short[]) {
+                for (short value : (short[]) row) {
+                    hash = mix(hash, value);
+                }
+            } else {
+                // Растры с вещественными отсчетами хэшируются по цветам пикселей
+                for (int x = 0; x < width; x++) {
+                    hash = mix(hash, image.getRGB(x, y));
+                }
+            }
+        }
+        return String.format("%016x", hash);
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * 0x100000001B3L;
+    }
+
+    /**
+     * Строит ключ результата операции.
+     *
+     * @param parent    Ключ исходного изображения или результата предыдущей операции.
+     * @param operation Имя операции.
+     * @param params    Параметры операции (имена констант и числа).
+     * @return Ключ вида {@code parent-operation-param1-param2}.
+     */
+    static String key(String parent, String operation, Object... params) {
+        StringBuilder key = new StringBuilder(parent).append('-').append(operation);
+        for (Object param : params) {
+            key.append('-').append(param);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Возвращает изображение из кэша.
+     *
+     * @param key Ключ результата.
+     * @return Изображение или {@code null}, если его нет ни в памяти, ни на диске.
+     */
+    BufferedImage get(String key) {
+        synchronized (this) {
+            BufferedImage image = images.get(key);
+            if (image != null) {
+                return image;
+            }
+        }
+        BufferedImage image = readFromDisk(key);
+        if (image != null) {
+            putInMemory(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Помещает изображение в кэш (и на диск, если задан каталог).
+     *
+     * @param key   Ключ результата.
+     * @param image Изображение, которое больше не будет изменяться.
+     */
+    void put(String key, BufferedImage image) {
+        putInMemory(key, image);
+        writeToDisk(key, image);
+    }
+
+    /**
+     * Возвращает изображение из кэша или вычисляет и сохраняет его.
+     *
+     * @param key     Ключ результата.
+     * @param compute Вычисление результата при промахе.
+     * @return Изображение из кэша или вычисленное изображение.
+     */
+    BufferedImage computeIfAbsent(String key, Supplier<BufferedImage> compute) {
+        BufferedImage image = get(key);
+        if (image == null) {
+            image = compute.get();
+            put(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * @return Общий размер изображений в памяти в байтах.
+     */
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    private synchronized void putInMemory(String key, BufferedImage image) {
+        long size = sizeOf(image);
+        if (size > maxBytes) {
+            return;
+        }
+        BufferedImage previous = images.put(key, image);
+        if (previous != null) {
+            bytes -= sizeOf(previous);
+        }
+        bytes += size;
+
+        // Вытесняем давно не использованные изображения, пока размер не станет допустимым
+        Iterator<Map.Entry<String, BufferedImage>> eldest = images.entrySet().iterator();
+        while (bytes > maxBytes) {
+            bytes -= sizeOf(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private BufferedImage readFromDisk(String key) {
+        if (directory == null || !Files.isDirectory(directory)) {
+            return null;
+        }
+        // Тип изображения известен только из имени файла, поэтому файл ищется по ключу
+        String prefix = key + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                file -> isCacheFile(file.getFileName().toString(), prefix))) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int type = Integer.parseInt(name.substring(prefix.length(), name.length() - ".png".length()));
+                BufferedImage image = ImageIO.read(file.toFile());
+                return image != null ? convert(image, type) : null;
+            }
+            return null;
+        } catch (IOException e) {
+            // Поврежденный файл кэша считается промахом
+            return null;
+        }
+    }
+
+    /**
+     * Проверяет, что имя файла имеет вид {@code <prefix><тип>.png}, где тип - десятичное число.
+     * Другие ключи могут начинаться с того же префикса, но после него идут не только цифры.
+     */
+    private static boolean isCacheFile(String name, String prefix) {
+        if (!name.startsWith(prefix) || !name.endsWith(".png")) {
+            return false;
+        }
+        int end = name.length() - ".png".length();
+        if (end == prefix.length()) {
+            return false;
+        }
+        for (int i = prefix.length(); i < end; i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Преобразует прочитанное изображение к типу, с которым оно было сохранено. Изображения
+     * нестандартного типа ({@code TYPE_CUSTOM}) и уже совпадающего типа возвращаются без изменений.
+     */
+    private static BufferedImage convert(BufferedImage image, int type) {
+        if (image.getType() == type || type == BufferedImage.TYPE_CUSTOM) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage converted = new BufferedImage(width, height, type);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            converted.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return converted;
+    }
+
+    private void writeToDisk(String key, BufferedImage image) {
+        if (directory == null) {
+            return;
+        }
+        Path file = directory.resolve(key + "." + image.getType() + ".png");
+        if (Files.exists(file)) {
+            return;
+        }
+        try {
+            // Запись через временный файл, чтобы другие потоки и процессы не прочитали его частично
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                DISK_EXPORTER.write(image, temp, null);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // Кэш на диске необязателен: результат остается в памяти
+            System.err.println("Не удалось сохранить результат в кэш: " + e);
+        }
+    }
+
+    /**
+     * Возвращает размер данных растра изображения в байтах.
+     */
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+}
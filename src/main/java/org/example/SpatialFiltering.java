@@ -1,6 +1,5 @@
 package org.example;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
@@ -11,16 +10,18 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Random;
+import java.util.BitSet;
 import java.util.List;
-import java.awt.Point;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 public class SpatialFiltering {
     /**
      * Типы шума, которые могут быть добавлены к изображению.
      */
-    private enum NoiseType {
+    enum NoiseType {
         UNIPOLAR,  // Униполярный шум
         BIPOLAR    // Биполярный шум
     }
@@ -28,7 +29,7 @@ public class SpatialFiltering {
     /**
      * Каналы цвета, которые могут быть извлечены из изображения.
      */
-    private enum Channel {
+    enum Channel {
         R,  // Красный канал
         G,  // Зеленый канал
         B   // Синий канал
@@ -37,17 +38,52 @@ public class SpatialFiltering {
     /**
      * Типы фильтров, которые могут быть применены к изображению.
      */
-    private enum FilterType {
-        MEDIAN,         // Медианный фильтр
-        HARMONIC_MEAN   // Среднегармонический фильтр
+    enum FilterType {
+        MEDIAN,           // Медианный фильтр
+        HARMONIC_MEAN,    // Среднегармонический фильтр
+        SWITCHING_MEDIAN  // Медианный фильтр только для пикселей импульсного шума
     }
 
+    /**
+     * Форматы сохранения изображений.
+     */
+    enum ExportFormat {
+        PNG,               // PNG со сжатием по умолчанию
+        PNG_FAST,          // PNG с быстрым сжатием для промежуточных результатов
+        PNG_UNCOMPRESSED,  // PNG без сжатия
+        BMP                // BMP без сжатия
+    }
+
+    /**
+     * Высота полосы, которая выводится на экран, как только отфильтрована.
+     */
+    private static final int PREVIEW_STRIP_HEIGHT = 64;
+
     // Изображения
     private BufferedImage originalImage;   // Исходное изображение
     private BufferedImage noisyImage;      // Зашумленное изображение
     private BufferedImage channelImage;    // Изображение с извлеченным каналом
     private BufferedImage filteredImage;   // Отфильтрованное изображение
 
+    // Кэш результатов: повторное применение тех же параметров не пересчитывает изображения
+    private final ResultCache cache = ResultCache.getDefault();
+    private String originalKey;            // Ключ исходного изображения в кэше
+    private String noisyKey;               // Ключ зашумленного изображения в кэше
+
+    // Фоновые задачи: обработка выполняется вне потока событий и отменяется при изменении параметров
+    private SwingWorker<?, ?> openWorker;   // Чтение исходного изображения
+    private SwingWorker<?, ?> noiseWorker;  // Зашумление и выделение канала
+    private SwingWorker<?, ?> filterWorker; // Фильтрация
+    private SwingWorker<?, ?> sweepWorker;  // Подбор размера маски
+
+    // Режим предварительного просмотра: изображения показываются и фильтруются в размере области
+    // просмотра, а отфильтрованное изображение в полном разрешении вычисляется при сохранении
+    private boolean preview;
+    private ImagePyramid originalPyramid;  // Уменьшенные копии исходного изображения
+    private ImagePyramid noisyPyramid;     // Уменьшенные копии зашумленного изображения
+    private ImagePyramid channelPyramid;   // Уменьшенные копии изображения с извлеченным каналом
+    private Consumer<Runnable> pendingFilter; // Отложенная фильтрация в полном разрешении или null
+
     // Метки для отображения изображений на форме
     private JLabel originalImageLabel;     // Метка для исходного изображения
     private JLabel noisyImageLabel;        // Метка для зашумленного изображения
@@ -56,6 +92,22 @@ public class SpatialFiltering {
 
 
     public static void main(String[] args) {
+        // С ключом --batch изображения обрабатываются из командной строки без интерфейса
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchProcessor.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // С ключом --stream большое изображение фильтруется полосами, не загружаясь целиком
+        if (args.length > 0 && args[0].equals("--stream")) {
+            StripProcessor.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // С ключом --serve фильтры доступны другим процессам через локальный HTTP-сервер
+        if (args.length > 0 && args[0].equals("--serve")) {
+            FilterServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         SwingUtilities.invokeLater(() -> {
             try {
                 new SpatialFiltering().createAndShowGUI();
@@ -93,6 +145,18 @@ public class SpatialFiltering {
         JComboBox<Channel> channelComboBox = new JComboBox<>(Channel.values());
         panel.add(channelComboBox);  // Добавляем выпадающий список на панель
 
+        // Создаем спиннер для выбора плотности шума в процентах (от 1 до 50, по умолчанию 10)
+        JSpinner densitySpinner = new JSpinner(new SpinnerNumberModel(
+                (int) (NoiseGenerator.DEFAULT_DENSITY * 100), 1, 50, 1));
+        densitySpinner.setEditor(new JSpinner.NumberEditor(densitySpinner, "0'%'"));
+        densitySpinner.setToolTipText("Плотность шума");
+        panel.add(densitySpinner);  // Добавляем спиннер на панель
+
+        // Создаем спиннер для выбора зерна генератора шума, чтобы шум можно было воспроизвести
+        JSpinner seedSpinner = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 1));
+        seedSpinner.setEditor(new JSpinner.NumberEditor(seedSpinner, "0"));
+        seedSpinner.setToolTipText("Зерно генератора шума");
+        panel.add(seedSpinner);  // Добавляем спиннер на панель
 
         // Создание кнопки "Применить шум и выделить канал"
         JButton applyButton = new JButton("Применить шум и выделить канал");
@@ -101,19 +165,65 @@ public class SpatialFiltering {
         applyButton.addActionListener(e -> {
             // Проверка, было ли уже загружено изображение
             if (originalImage != null) {
-                // Создание копии оригинального изображения
-                noisyImage = copyImage(originalImage);
-                // Добавление шума к изображению
-                addNoise(noisyImage, (NoiseType) noiseTypeComboBox.getSelectedItem());
-                // Обновление метки изображения
-                noisyImageLabel.setIcon(new ImageIcon(noisyImage));
+                NoiseType noiseType = (NoiseType) noiseTypeComboBox.getSelectedItem();
+                double density = (Integer) densitySpinner.getValue() / 100.0;
+                int seed = (Integer) seedSpinner.getValue();
+                Channel channel = (Channel) channelComboBox.getSelectedItem();
+                BufferedImage original = originalImage;
+                String noiseKey = ResultCache.key(originalKey, "noise", noiseType, density, seed);
+                String channelKey = ResultCache.key(noiseKey, "channel", channel);
+
+                // Предыдущая задача больше не нужна: ее результат был бы сразу заменен
+                cancel(noiseWorker);
+                cancel(sweepWorker);
+                noiseWorker = new SwingWorker<Void, Void>() {
+                    private BufferedImage noisy;
+                    private BufferedImage channelOnly;
+
+                    @Override
+                    protected Void doInBackground() {
+                        noisy = cache.get(noiseKey);
+                        channelOnly = cache.get(channelKey);
+                        StageMetrics.Job job = StageMetrics.getDefault().job(channelKey);
+                        try {
+                            if (noisy == null) {
+                                // Добавление шума и выделение канала за одно чтение исходного изображения
+                                ProcessingPipeline.Result result = new ProcessingPipeline()
+                                        .noise(noiseType, density, seed)
+                                        .channel(channel)
+                                        .job(job)
+                                        .run(original);
+                                noisy = result.noisyImage();
+                                channelOnly = result.channelImage();
+                                cache.put(noiseKey, noisy);
+                                cache.put(channelKey, channelOnly);
+                            } else if (channelOnly == null) {
+                                // Зашумленное изображение уже вычислено, выделяем из него только канал
+                                channelOnly = new ProcessingPipeline().channel(channel).job(job).run(noisy).channelImage();
+                                cache.put(channelKey, channelOnly);
+                            }
+                        } finally {
+                            job.finish();
+                        }
+                        return null;
+                    }
 
-                // Создание копии зашумленного изображения
-                channelImage = copyImage(noisyImage);
-                // Выделение канала из изображения
-                extractChannel(channelImage, (Channel) channelComboBox.getSelectedItem());
-                // Обновление метки изображения
-                channelImageLabel.setIcon(new ImageIcon(channelImage));
+                    @Override
+                    protected void done() {
+                        if (!completed(this)) {
+                            return;
+                        }
+                        // Обновление меток изображений
+                        noisyImage = noisy;
+                        noisyKey = noiseKey;
+                        noisyPyramid = new ImagePyramid(noisyImage);
+                        show(noisyImageLabel, noisyPyramid);
+                        channelImage = channelOnly;
+                        channelPyramid = new ImagePyramid(channelImage);
+                        show(channelImageLabel, channelPyramid);
+                    }
+                };
+                noiseWorker.execute();
             }
         });
         // Добавление кнопки на панель
@@ -138,6 +248,23 @@ public class SpatialFiltering {
         // Добавление спиннера на панель
         panel.add(spinner);
 
+        // Флажок для фильтрации только выбранного канала: результат в оттенках серого,
+        // втрое меньше вычислений и памяти
+        JCheckBox singleChannelCheckBox = new JCheckBox("Только канал");
+        singleChannelCheckBox.setToolTipText("Фильтровать только выбранный канал цвета");
+        panel.add(singleChannelCheckBox);
+
+        // Флажок режима предварительного просмотра: фильтр применяется к уменьшенной копии
+        // и перезапускается при изменении его параметров
+        JCheckBox previewCheckBox = new JCheckBox("Предпросмотр");
+        previewCheckBox.setToolTipText("Фильтровать уменьшенную копию, полное разрешение - при сохранении");
+        previewCheckBox.addActionListener(e -> {
+            preview = previewCheckBox.isSelected();
+            show(originalImageLabel, originalPyramid);
+            show(noisyImageLabel, noisyPyramid);
+            show(channelImageLabel, channelPyramid);
+        });
+        panel.add(previewCheckBox);
 
 
         // Создание кнопки "Применить фильтр"
@@ -147,31 +274,130 @@ public class SpatialFiltering {
         applyNoiseFilterButton.addActionListener(e -> {
             // Проверка, было ли уже загружено зашумленное изображение
             if (noisyImage != null) {
-                // Создание копии зашумленного изображения
-                filteredImage = copyImage(noisyImage);
                 // Получение размера маски из спиннера
                 int maskSize = (Integer) spinner.getValue();
-                // Проверка выбранного типа фильтра и применение соответствующего фильтра
-                if (filterTypeComboBox.getSelectedItem() == FilterType.MEDIAN) {
-                    applyMedianFilter(filteredImage, maskSize);
-                } else {  // FilterType.HARMONIC_MEAN
-                    applyHarmonicMeanFilter(filteredImage, maskSize);
+                FilterType filterType = (FilterType) filterTypeComboBox.getSelectedItem();
+                Channel channel = singleChannelCheckBox.isSelected()
+                        ? (Channel) channelComboBox.getSelectedItem() : null;
+                BufferedImage noisy = noisyImage;
+                String key = noisyKey;
+
+                int level = previewLevel(noisyPyramid);
+                if (level > 0) {
+                    // Фильтруем уменьшенную копию, а полное разрешение вычисляем только при сохранении
+                    pendingFilter = onDone -> startFilter(noisy, key, filterType, maskSize, channel, image -> {
+                        filteredImage = image;
+                        pendingFilter = null;
+                        onDone.run();
+                    });
+                    startFilter(noisyPyramid.level(level), ResultCache.key(key, "preview", level),
+                            filterType, maskSize, channel, image -> { });
+                } else {
+                    pendingFilter = null;
+                    startFilter(noisy, key, filterType, maskSize, channel, image -> filteredImage = image);
                 }
-                // Обновление метки изображения
-                filteredImageLabel.setIcon(new ImageIcon(filteredImage));
             }
         });
         // Добавление кнопки на панель
         panel.add(applyNoiseFilterButton);
 
+        // Кнопка подбора размера маски: выбранный фильтр применяется со всеми размерами маски,
+        // результаты сравниваются с исходным изображением, и в спиннере выбирается лучший размер
+        JButton sweepButton = new JButton("Подобрать маску");
+        sweepButton.setToolTipText("Сравнить все размеры маски по PSNR и SSIM с исходным изображением");
+        sweepButton.addActionListener(e -> {
+            if (originalImage != null && noisyImage != null) {
+                FilterType filterType = (FilterType) filterTypeComboBox.getSelectedItem();
+                BufferedImage original = originalImage;
+                BufferedImage noisy = noisyImage;
+                String key = ResultCache.key(noisyKey, "sweep", filterType);
+
+                cancel(sweepWorker);
+                sweepWorker = new SwingWorker<ParameterSweep.Report, Void>() {
+                    @Override
+                    protected ParameterSweep.Report doInBackground() {
+                        StageMetrics.Job job = StageMetrics.getDefault().job(key);
+                        try {
+                            return new ParameterSweep(filterType, ParameterSweep.DEFAULT_MASK_SIZES)
+                                    .job(job)
+                                    .run(original, noisy);
+                        } finally {
+                            job.finish();
+                        }
+                    }
+
+                    @Override
+                    protected void done() {
+                        if (!completed(this)) {
+                            return;
+                        }
+                        try {
+                            ParameterSweep.Report report = get();
+                            spinner.setValue(report.best().getMaskSize());
+
+                            JTextArea text = new JTextArea(report.toString());
+                            text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, text.getFont().getSize()));
+                            text.setEditable(false);
+                            JOptionPane.showMessageDialog(frame, text, "Подбор маски", JOptionPane.INFORMATION_MESSAGE);
+                        } catch (InterruptedException | ExecutionException ex) {
+                            ex.printStackTrace();
+                        }
+                    }
+                };
+                sweepWorker.execute();
+            }
+        });
+        panel.add(sweepButton);
+
+        // Изменение параметров отменяет фоновую задачу, результат которой им уже не соответствует;
+        // в режиме предварительного просмотра фильтр сразу перезапускается с новыми параметрами
+        Runnable filterChanged = () -> {
+            cancel(filterWorker);
+            if (preview) {
+                applyNoiseFilterButton.doClick(0);
+            }
+        };
+        noiseTypeComboBox.addActionListener(e -> cancel(noiseWorker));
+        densitySpinner.addChangeListener(e -> cancel(noiseWorker));
+        seedSpinner.addChangeListener(e -> cancel(noiseWorker));
+        channelComboBox.addActionListener(e -> {
+            cancel(noiseWorker);
+            if (singleChannelCheckBox.isSelected()) {
+                filterChanged.run();
+            }
+        });
+        filterTypeComboBox.addActionListener(e -> {
+            cancel(sweepWorker);
+            filterChanged.run();
+        });
+        spinner.addChangeListener(e -> filterChanged.run());
+        singleChannelCheckBox.addActionListener(e -> filterChanged.run());
+
         // Создание панели для кнопок с выравниванием элементов по правому краю
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         // Добавление панели кнопок в нижнюю часть основного окна
         frame.getContentPane().add(buttonPanel, BorderLayout.SOUTH);
 
+        // Создание выпадающего списка для выбора формата и сжатия сохраняемых изображений
+        JComboBox<ExportFormat> exportFormatComboBox = new JComboBox<>(ExportFormat.values());
+        exportFormatComboBox.setToolTipText("Формат сохранения: быстрое сжатие и BMP записываются быстрее");
+        buttonPanel.add(exportFormatComboBox);
+
         // Создание кнопки "Сохранить изображения"
         JButton saveAllButton = new JButton("Сохранить изображения");
         saveAllButton.addActionListener(e -> {
+            // Отфильтрованное изображение в полном разрешении еще не вычислено: сохраняем после фильтрации
+            if (pendingFilter != null) {
+                pendingFilter.accept(() -> saveAllButton.doClick(0));
+                return;
+            }
+
+            ImageExporter exporter = ImageExporter.of((ExportFormat) exportFormatComboBox.getSelectedItem());
+            String extension = exporter.getExtension();
+            // Изображения кодируются в фоновых потоках одновременно: пока одно записывается,
+            // выбирается файл для следующего
+            List<CompletableFuture<String>> exports = new ArrayList<>();
+
             // Создание диалога выбора файла
             JFileChooser fileChooser = new JFileChooser();
 
@@ -180,19 +406,11 @@ public class SpatialFiltering {
                 // Вывод сообщения о сохранении зашумленного изображения
                 JOptionPane.showMessageDialog(frame, "Сохранение зашумленного изображения");
                 // Установка предложенного имени файла
-                fileChooser.setSelectedFile(new File("noise-image-01.png"));
+                fileChooser.setSelectedFile(new File("noise-image-01." + extension));
                 // Открытие диалога сохранения файла и проверка результата
                 if (fileChooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
-                    File file = fileChooser.getSelectedFile();
-                    try {
-                        // Сохранение изображения в файл
-                        ImageIO.write(noisyImage, "png", file);
-                        // Вывод сообщения об успешном сохранении файла
-                        JOptionPane.showMessageDialog(frame, "Зашумленное изображение сохранено как " + file.getName());
-                    } catch (IOException ioException) {
-                        // Вывод информации об ошибке при сохранении файла
-                        ioException.printStackTrace();
-                    }
+                    exports.add(export(exporter, noisyImage, fileChooser.getSelectedFile(),
+                            "Зашумленное изображение сохранено как "));
                 }
             }
 
@@ -201,43 +419,36 @@ public class SpatialFiltering {
                 // Вывод сообщения о сохранении зашумленного изображения по каналу
                 JOptionPane.showMessageDialog(frame, "Сохранение зашумленного изображения по каналу");
                 // Установка предложенного имени файла
-                fileChooser.setSelectedFile(new File("channel-image-01.png"));
+                fileChooser.setSelectedFile(new File("channel-image-01." + extension));
                 // Открытие диалога сохранения файла и проверка результата
                 if (fileChooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
-                    File file = fileChooser.getSelectedFile();
-                    try {
-                        // Сохранение изображения в файл
-                        ImageIO.write(channelImage, "png", file);
-                        // Вывод сообщения об успешном сохранении файла
-                        JOptionPane.showMessageDialog(frame, "Зашумленное изображение по каналу сохранено как " + file.getName());
-                    } catch (IOException ioException) {
-                        // Вывод информации об ошибке при сохранении файла
-                        ioException.printStackTrace();
-                    }
+                    exports.add(export(exporter, channelImage, fileChooser.getSelectedFile(),
+                            "Зашумленное изображение по каналу сохранено как "));
                 }
             }
 
             // Проверка, было ли уже загружено отфильтрованное изображение
             if (filteredImage != null) {
-                    // Вывод сообщения о сохранении отфильтрованного изображения
-                    JOptionPane.showMessageDialog(frame, "Сохранение отфильтрованного изображения");
-                    // Установка предложенного имени файла
-                    fileChooser.setSelectedFile(new File("filter-image-01.png"));
-                    // Открытие диалога сохранения файла и проверка результата
-                    if (fileChooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
-                        File file = fileChooser.getSelectedFile();
-                        try {
-                            // Сохранение изображения в файл
-                            ImageIO.write(filteredImage, "png", file);
-                            // Вывод сообщения об успешном сохранении файла
-                            JOptionPane.showMessageDialog(frame, "Отфильтрованное изображение сохранено как " + file.getName());
-                        } catch (IOException ioException) {
-                            // Вывод информации об ошибке при сохранении файла
-                            ioException.printStackTrace();
-                        }
-                    }
+                // Вывод сообщения о сохранении отфильтрованного изображения
+                JOptionPane.showMessageDialog(frame, "Сохранение отфильтрованного изображения");
+                // Установка предложенного имени файла
+                fileChooser.setSelectedFile(new File("filter-image-01." + extension));
+                // Открытие диалога сохранения файла и проверка результата
+                if (fileChooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                    exports.add(export(exporter, filteredImage, fileChooser.getSelectedFile(),
+                            "Отфильтрованное изображение сохранено как "));
                 }
-            });
+            }
+
+            // Вывод одного сообщения, когда записаны все изображения
+            if (!exports.isEmpty()) {
+                CompletableFuture.allOf(exports.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+                    StringJoiner message = new StringJoiner("\n");
+                    exports.forEach(export -> message.add(export.join()));
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, message.toString()));
+                });
+            }
+        });
 
 
             // Добавление кнопки "Сохранить изображения" на панель кнопок
@@ -248,6 +459,12 @@ public class SpatialFiltering {
 
         // Добавление слушателя событий к кнопке
         clearButton.addActionListener(e -> {
+            // Отмена фоновых задач
+            cancel(openWorker);
+            cancel(noiseWorker);
+            cancel(filterWorker);
+            cancel(sweepWorker);
+
             // Удаление изображений из меток
             originalImageLabel.setIcon(null);
             noisyImageLabel.setIcon(null);
@@ -259,6 +476,12 @@ public class SpatialFiltering {
             noisyImage = null;
             channelImage = null;
             filteredImage = null;
+            originalKey = null;
+            noisyKey = null;
+            originalPyramid = null;
+            noisyPyramid = null;
+            channelPyramid = null;
+            pendingFilter = null;
         });
 
         // Добавление кнопки на панель кнопок
@@ -306,65 +529,207 @@ public class SpatialFiltering {
         if (returnValue == JFileChooser.APPROVE_OPTION) {
             // Если пользователь подтвердил выбор файла
             File selectedFile = fileChooser.getSelectedFile();
+            // Результаты задач для прежнего изображения больше не нужны
+            cancel(openWorker);
+            cancel(noiseWorker);
+            cancel(filterWorker);
+            cancel(sweepWorker);
+
+            // Чтение и хэширование большого изображения занимают секунды, поэтому выполняются
+            // вне потока событий; ошибка чтения файла выводится в консоль
+            openWorker = new SwingWorker<Void, Void>() {
+                private BufferedImage image;
+                private String key;
+
+                @Override
+                protected Void doInBackground() throws IOException {
+                    // Читаем изображение из выбранного файла
+                    image = readImage(selectedFile);
+                    if (image != null) {
+                        key = ResultCache.imageKey(image);
+                    }
+                    return null;
+                }
 
-            try {
-                // Читаем изображение из выбранного файла
-                originalImage = ImageIO.read(selectedFile);
-                // Устанавливаем изображение в метку на форме
-                originalImageLabel.setIcon(new ImageIcon(originalImage));
-            } catch (IOException e) {
-                // В случае ошибки чтения файла выводим информацию об ошибке
-                e.printStackTrace();
-            }
+                @Override
+                protected void done() {
+                    if (!completed(this)) {
+                        return;
+                    }
+                    if (image == null) {
+                        System.err.println("Формат файла не поддерживается: " + selectedFile);
+                        return;
+                    }
+                    originalImage = image;
+                    originalKey = key;
+                    originalPyramid = new ImagePyramid(originalImage);
+                    // Устанавливаем изображение в метку на форме
+                    show(originalImageLabel, originalPyramid);
+                }
+            };
+            openWorker.execute();
         }
     }
 
 
     /**
-     * Добавляет шум к изображению.
+     * Отменяет фоновую задачу, если она выполняется. Фильтрация прерывается между полосами строк.
      *
-     * @param image Исходное изображение.
-     * @param noiseType Тип шума (униполярный или биполярный).
+     * @param worker Задача или null.
      */
-    private void addNoise(BufferedImage image, NoiseType noiseType) {
-        Random rand = new Random();
-
-        // Вычисляем общее количество пикселей в изображении
-        int totalPixels = image.getWidth() * image.getHeight();
-        System.out.println("Общее количество пикселей: " + totalPixels);
-
-        // Вычисляем количество пикселей, которые нужно зашумить (10% от общего количества пикселей)
-        int amount = (int) (totalPixels * 0.1);
-        System.out.println("Количество шумовых пикселей: " + amount);
-        System.out.println("Процент шумовых пикселей: " + (amount * 100.0 / totalPixels) + "%");
-
-        List<Point> points = new ArrayList<>();
+    private static void cancel(SwingWorker<?, ?> worker) {
+        if (worker != null) {
+            worker.cancel(true);
+        }
+    }
 
-        // Создаем список всех пикселей на изображении
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                points.add(new Point(x, y));
-            }
+    /**
+     * Проверяет, что фоновая задача завершилась успешно и ее результат нужно показать:
+     * задача не отменена и не заменена более новой. Ошибка задачи выводится в консоль.
+     *
+     * @param worker Завершившаяся задача.
+     * @return true, если результат задачи нужно показать.
+     */
+    private boolean completed(SwingWorker<?, ?> worker) {
+        if (worker.isCancelled() || (worker != openWorker && worker != noiseWorker && worker != filterWorker
+                && worker != sweepWorker)) {
+            return false;
+        }
+        try {
+            worker.get();
+            return true;
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            return false;
         }
+    }
 
-        // Перемешиваем список
-        Collections.shuffle(points, rand);
+    /**
+     * Запускает фильтрацию в фоновой задаче. Полосы результата выводятся в метку отфильтрованного
+     * изображения по мере готовности.
+     *
+     * @param source     Фильтруемое изображение.
+     * @param sourceKey  Ключ фильтруемого изображения в кэше.
+     * @param filterType Тип фильтра.
+     * @param maskSize   Размер маски фильтра.
+     * @param channel    Канал для одноканального режима или null для фильтрации всех каналов.
+     * @param onResult   Вызывается в потоке событий с результатом, если задача не отменена.
+     */
+    private void startFilter(BufferedImage source, String sourceKey, FilterType filterType, int maskSize,
+                             Channel channel, Consumer<BufferedImage> onResult) {
+        // Применение выбранного фильтра; фильтруемое изображение не изменяется
+        ProcessingPipeline pipeline = new ProcessingPipeline().filter(filterType, maskSize);
+        String key = ResultCache.key(sourceKey, "filter", filterType, maskSize);
+        if (channel != null) {
+            pipeline.channel(channel).singleChannel(true);
+            key = ResultCache.key(key, "channel", channel);
+        }
+        String filterKey = key;
+
+        // Полосы результата выводятся в это изображение по мере фильтрации
+        BufferedImage preview = channel != null
+                ? new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_BYTE_GRAY)
+                : PlanarImage.createCompatibleImage(source);
+        int stripHeight = Math.max(PREVIEW_STRIP_HEIGHT, TiledExecutor.getDefault().getMinParallelRows());
+
+        cancel(filterWorker);
+        filteredImage = null;
+        filteredImageLabel.setIcon(new ImageIcon(preview));
+        filterWorker = new SwingWorker<Void, int[]>() {
+            private volatile PlanarImage filtered;
+            private BufferedImage result;
+
+            @Override
+            protected Void doInBackground() {
+                result = cache.get(filterKey);
+                if (result == null) {
+                    StageMetrics.Job job = StageMetrics.getDefault().job(filterKey);
+                    try {
+                        result = pipeline
+                                .progress(stripHeight, (image, fromRow, toRow) -> {
+                                    filtered = image;
+                                    publish(new int[]{fromRow, toRow});
+                                })
+                                .job(job)
+                                .run(source)
+                                .filteredImage();
+                    } finally {
+                        job.finish();
+                    }
+                    cache.put(filterKey, result);
+                }
+                return null;
+            }
 
-        // Берем первые 10% пикселей из перемешанного списка
-        List<Point> noisePoints = points.subList(0, amount);
+            @Override
+            protected void process(List<int[]> strips) {
+                // Готовые строки больше не изменяются, поэтому их можно копировать параллельно фильтрации
+                if (filterWorker != this || isDone()) {
+                    return;
+                }
+                for (int[] strip : strips) {
+                    filtered.writeTo(preview, strip[0], strip[1]);
+                }
+                filteredImageLabel.repaint();
+            }
 
-        // Добавляем шум к выбранным пикселям
-        for (Point p : noisePoints) {
-            Color color;
-            if (noiseType == NoiseType.UNIPOLAR) {
-                color = Color.WHITE;  // Светлая точка
-            } else {  // Bipolar noise
-                color = rand.nextBoolean() ? Color.BLACK : Color.WHITE;  // Случайно выбираем темную или светлую точку
+            @Override
+            protected void done() {
+                if (!completed(this)) {
+                    return;
+                }
+                // Обновление метки изображения
+                filteredImageLabel.setIcon(new ImageIcon(result));
+                onResult.accept(result);
             }
+        };
+        filterWorker.execute();
+    }
+
+    /**
+     * Показывает изображение в метке; в режиме предварительного просмотра - уровень пирамиды,
+     * который помещается в область просмотра.
+     *
+     * @param label   Метка.
+     * @param pyramid Пирамида изображения или null, если изображения нет.
+     */
+    private void show(JLabel label, ImagePyramid pyramid) {
+        label.setIcon(pyramid != null ? new ImageIcon(pyramid.level(previewLevel(pyramid))) : null);
+    }
 
-            // Устанавливаем цвет пикселя на изображении
-            image.setRGB(p.x, p.y, color.getRGB());
+    /**
+     * Возвращает уровень пирамиды для показа: в режиме предварительного просмотра - первый уровень,
+     * который целиком помещается в область просмотра метки, иначе 0 (полное разрешение).
+     */
+    private int previewLevel(ImagePyramid pyramid) {
+        if (!preview || pyramid == null) {
+            return 0;
         }
+        // Области просмотра всех меток одинаковы
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, filteredImageLabel);
+        Dimension size = viewport.getExtentSize();
+        if (size.width == 0 || size.height == 0) {
+            // Окно еще не размещено на экране
+            return 0;
+        }
+        return pyramid.levelFor(size.width, size.height);
+    }
+
+    /**
+     * Добавляет шум к изображению.
+     *
+     * @param image Исходное изображение.
+     * @param noiseType Тип шума (униполярный или биполярный).
+     * @param density Доля зашумляемых пикселей в диапазоне [0, 1].
+     * @param seed Зерно генератора случайных чисел.
+     */
+    void addNoise(BufferedImage image, NoiseType noiseType, double density, long seed) {
+        time("noise", image, 1, () -> {
+            // Добавляем шум к случайно выбранным пикселям и записываем их в изображение
+            PlanarImage planar = PlanarImage.fromImage(image);
+            BitSet noisePixels = NoiseGenerator.apply(planar, noiseType, density, seed);
+            planar.writeTo(image, noisePixels);
+        });
     }
 
     /**
@@ -373,26 +738,13 @@ public class SpatialFiltering {
      * @param image Исходное изображение.
      * @param channel Канал, который нужно извлечь.
      */
-    private void extractChannel(BufferedImage image, Channel channel) {
-        // Проходим по каждому пикселю изображения
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                // Получаем цвет текущего пикселя
-                Color color = new Color(image.getRGB(x, y));
-
-                // В зависимости от выбранного канала зануляем два других канала
-                if (channel == Channel.R) {
-                    color = new Color(color.getRed(), 0, 0);  // Оставляем только красный канал
-                } else if (channel == Channel.G) {
-                    color = new Color(0, color.getGreen(), 0);  // Оставляем только зеленый канал
-                } else {  // Channel.B
-                    color = new Color(0, 0, color.getBlue());  // Оставляем только синий канал
-                }
+    void extractChannel(BufferedImage image, Channel channel) {
+        time("channel", image, 1, () -> {
+            PlanarImage planar = PlanarImage.fromImage(image);
 
-                // Устанавливаем новый цвет для текущего пикселя в изображении
-                image.setRGB(x, y, color.getRGB());
-            }
-        }
+            // Записываем в изображение только выбранный канал, зануляя два других канала
+            planar.writeChannelTo(image, channel.ordinal());
+        });
     }
 
     /**
@@ -401,50 +753,19 @@ public class SpatialFiltering {
      * @param image    Изображение, к которому применяется фильтр.
      * @param maskSize Размер маски фильтра.
      */
-    private void applyMedianFilter(BufferedImage image, int maskSize) {
-        // Создаем копию изображения, чтобы не изменять исходное изображение при чтении пикселей
-        BufferedImage copy = copyImage(image);
-
-        // Вычисляем смещение маски относительно текущего пикселя
-        int offset = maskSize / 2;
-
-        // Проходим по всем пикселям изображения
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                // Массивы для хранения значений RGB каждого пикселя в маске
-                int[] reds = new int[maskSize * maskSize];
-                int[] greens = new int[maskSize * maskSize];
-                int[] blues = new int[maskSize * maskSize];
-
-                // Проходим по всем пикселям в маске
-                for (int ky = -offset; ky <= offset; ky++) {
-                    for (int kx = -offset; kx <= offset; kx++) {
-                        // Вычисляем координаты пикселя, учитывая границы изображения
-                        int pixelX = Math.min(Math.max(x + kx, 0), image.getWidth() - 1);
-                        int pixelY = Math.min(Math.max(y + ky, 0), image.getHeight() - 1);
-
-                        // Читаем цвет пикселя
-                        Color color = new Color(copy.getRGB(pixelX, pixelY));
-
-                        // Сохраняем значения RGB пикселя в массивах
-                        reds[(ky + offset) * maskSize + kx + offset] = color.getRed();
-                        greens[(ky + offset) * maskSize + kx + offset] = color.getGreen();
-                        blues[(ky + offset) * maskSize + kx + offset] = color.getBlue();
-                    }
-                }
-
-                // Сортируем массивы значений RGB
-                Arrays.sort(reds);
-                Arrays.sort(greens);
-                Arrays.sort(blues);
-
-                // Вычисляем медианный цвет
-                Color medianColor = new Color(reds[reds.length / 2], greens[greens.length / 2], blues[blues.length / 2]);
-
-                // Устанавливаем медианный цвет для текущего пикселя
-                image.setRGB(x, y, medianColor.getRGB());
-            }
-        }
+    void applyMedianFilter(BufferedImage image, int maskSize) {
+        time("filter." + FilterType.MEDIAN, image, parallelism(), () -> {
+            // Читаем пиксели изображения по каналам; результат пишется в отдельное изображение,
+            // поэтому исходные значения не изменяются во время фильтрации
+            PlanarImage source = PlanarImage.fromImage(image);
+            PlanarImage result = new PlanarImage(source.getWidth(), source.getHeight());
+
+            // Фильтруем каждый канал скользящей гистограммой параллельно по полосам строк
+            MedianFilter.apply(source, result, maskSize, TiledExecutor.getDefault());
+
+            // Записываем результат в изображение
+            result.writeTo(image);
+        });
     }
 
 
@@ -454,77 +775,121 @@ public class SpatialFiltering {
      * @param image    Изображение, к которому применяется фильтр.
      * @param maskSize Размер маски фильтра.
      */
-    private void applyHarmonicMeanFilter(BufferedImage image, int maskSize) {
-        // Создаем копию изображения, чтобы не изменять исходное изображение при чтении пикселей
-        BufferedImage copy = copyImage(image);
+    void applyHarmonicMeanFilter(BufferedImage image, int maskSize) {
+        time("filter." + FilterType.HARMONIC_MEAN, image, parallelism(), () -> {
+            // Читаем пиксели изображения по каналам; результат пишется в отдельное изображение,
+            // поэтому исходные значения не изменяются во время фильтрации
+            PlanarImage source = PlanarImage.fromImage(image);
+            PlanarImage result = new PlanarImage(source.getWidth(), source.getHeight());
+
+            // Фильтруем каждый канал с помощью таблицы сумм параллельно по полосам строк
+            HarmonicMeanFilter.apply(source, result, maskSize, TiledExecutor.getDefault());
+
+            // Записываем результат в изображение
+            result.writeTo(image);
+        });
+    }
 
-        // Вычисляем смещение маски относительно текущего пикселя
-        int offset = maskSize / 2;
+    /**
+     * Переключающийся медианный фильтр: медиана вычисляется только для пикселей импульсного шума.
+     *
+     * @param image    Изображение, к которому применяется фильтр.
+     * @param maskSize Размер маски фильтра.
+     */
+    void applySwitchingMedianFilter(BufferedImage image, int maskSize) {
+        time("filter." + FilterType.SWITCHING_MEDIAN, image, parallelism(), () -> {
+            PlanarImage source = PlanarImage.fromImage(image);
+            PlanarImage result = new PlanarImage(source.getWidth(), source.getHeight());
 
-        // Проходим по всем пикселям изображения
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
+            // Неповрежденные пиксели копируются, кандидаты заменяются медианой неповрежденных соседей
+            SwitchingMedianFilter.apply(source, result, maskSize, TiledExecutor.getDefault());
 
-                // Инициализируем суммы для каждого цвета
-                double sumRed = 0, sumGreen = 0, sumBlue = 0;
+            // Записываем результат в изображение
+            result.writeTo(image);
+        });
+    }
 
-                // Проходим по всем пикселям в маске
-                for (int ky = -offset; ky <= offset; ky++) {
-                    for (int kx = -offset; kx <= offset; kx++) {
+    /**
+     * Копирование изображения.
+     *
+     * @param source Исходное изображение для копирования.
+     * @return Копия исходного изображения.
+     */
+    BufferedImage copyImage(BufferedImage source) {
+        return time("copy", source, 1, () -> {
+            // Получаем цветовую модель исходного изображения
+            ColorModel colorModel = source.getColorModel();
 
-                        // Вычисляем координаты пикселя, учитывая границы изображения
-                        int pixelX = Math.min(Math.max(x + kx, 0), image.getWidth() - 1);
-                        int pixelY = Math.min(Math.max(y + ky, 0), image.getHeight() - 1);
+            // Проверяем, является ли альфа-канал премультиплицированным
+            boolean isAlphaPremultiplied = colorModel.isAlphaPremultiplied();
 
-                        // Читаем цвет пикселя
-                        Color color = new Color(copy.getRGB(pixelX, pixelY));
+            // Копируем данные растра исходного изображения
+            WritableRaster raster = source.copyData(null);
 
-                        // Добавляем обратное значение каждого цвета в соответствующую сумму
-                        sumRed += 1.0 / (color.getRed() + 1);
-                        sumGreen += 1.0 / (color.getGreen() + 1);
-                        sumBlue += 1.0 / (color.getBlue() + 1);
-                    }
-                }
+            // Создаем новое изображение с той же цветовой моделью, данными растра и информацией о премультипликации альфа-канала
+            return new BufferedImage(colorModel, raster, isAlphaPremultiplied, null);
+        });
+    }
 
-                // Вычисляем гармоническое среднее для каждого цвета
-                int meanRed = (int) ((maskSize * maskSize) / sumRed);
-                int meanGreen = (int) ((maskSize * maskSize) / sumGreen);
-                int meanBlue = (int) ((maskSize * maskSize) / sumBlue);
+    /**
+     * Измеряет стадию обработки изображения вне заданий ({@link StageMetrics}).
+     */
+    private static void time(String stage, BufferedImage image, int threads,
+                             StageMetrics.Action<RuntimeException> body) {
+        StageMetrics.time(null, stage, (long) image.getWidth() * image.getHeight(), threads, body);
+    }
 
-                // Ограничиваем значения цветов диапазоном [0, 255]
-                meanRed = Math.min(Math.max(meanRed, 0), 255);
-                meanGreen = Math.min(Math.max(meanGreen, 0), 255);
-                meanBlue = Math.min(Math.max(meanBlue, 0), 255);
+    /**
+     * Измеряет стадию обработки изображения с результатом вне заданий ({@link StageMetrics}).
+     */
+    private static <T> T time(String stage, BufferedImage image, int threads,
+                              StageMetrics.Stage<T, RuntimeException> body) {
+        return StageMetrics.time(null, stage, (long) image.getWidth() * image.getHeight(), threads, body);
+    }
 
-                // Создаем цвет на основе вычисленных средних значений
-                Color meanColor = new Color(meanRed, meanGreen, meanBlue);
+    private static int parallelism() {
+        return TiledExecutor.getDefault().getParallelism();
+    }
 
-                // Устанавливаем вычисленный цвет для текущего пикселя
-                image.setRGB(x, y, meanColor.getRGB());
+    /**
+     * Читает изображение из файла, учитывая чтение в статистике стадий отдельным заданием.
+     * Если задан каталог кэша, повторное чтение файла выполняется из несжатой копии ({@link RawImageCache}).
+     *
+     * @param file Файл изображения.
+     * @return Изображение или null, если формат не поддерживается.
+     * @throws IOException Если возникла ошибка при чтении файла.
+     */
+    private static BufferedImage readImage(File file) throws IOException {
+        StageMetrics.Job job = StageMetrics.getDefault().job(file.getName());
+        try (StageMetrics.Measurement stage = job.measure("decode", 0, 1)) {
+            BufferedImage image = RawImageCache.getDefault().read(file.toPath());
+            if (image != null) {
+                stage.pixels((long) image.getWidth() * image.getHeight());
             }
+            return image;
+        } finally {
+            job.finish();
         }
     }
 
     /**
-     * Копирование изображения.
+     * Запускает запись изображения в фоновом потоке.
      *
-     * @param source Исходное изображение для копирования.
-     * @return Копия исходного изображения.
+     * @param exporter    Экспортер с выбранным форматом.
+     * @param image       Изображение.
+     * @param file        Файл для сохранения.
+     * @param description Начало сообщения об успешном сохранении.
+     * @return Сообщение о результате записи; ошибка записи выводится в консоль.
      */
-    private BufferedImage copyImage(BufferedImage source) {
-        // Получаем цветовую модель исходного изображения
-        ColorModel colorModel = source.getColorModel();
-
-        // Проверяем, является ли альфа-канал премультиплицированным
-        boolean isAlphaPremultiplied = colorModel.isAlphaPremultiplied();
-
-        // Копируем данные растра исходного изображения
-        WritableRaster raster = source.copyData(null);
-
-        // Создаем новое изображение с той же цветовой моделью, данными растра и информацией о премультипликации альфа-канала
-        return new BufferedImage(colorModel, raster, isAlphaPremultiplied, null);
+    private static CompletableFuture<String> export(ImageExporter exporter, BufferedImage image, File file,
+                                                    String description) {
+        return exporter.writeAsync(image, file.toPath()).handle((path, error) -> {
+            if (error != null) {
+                // Вывод информации об ошибке при сохранении файла
+                error.printStackTrace();
+                return "Не удалось сохранить " + file.getName() + ": " + error.getMessage();
+            }
+            return description + file.getName();
+        });
     }
 }
-
-
-
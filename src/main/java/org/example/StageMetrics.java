@@ -0,0 +1,346 @@
+package org.example;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Статистика стадий обработки: время, скорость в пикселях в секунду, выделенная память
+ * и количество потоков для чтения, зашумления, выделения канала, фильтров, копирования и записи.
+ * <p>
+ * Стадия, размер которой известен заранее, измеряется методом {@link #time}:
+ * <pre>
+ * BufferedImage copy = StageMetrics.time(job, "copy", pixels, 1, () -&gt; copyImage(image));
+ * </pre>
+ * Если количество пикселей становится известно только во время стадии, она измеряется блоком
+ * try-with-resources:
+ * <pre>
+ * try (StageMetrics.Measurement stage = job.measure("decode", 0, 1)) {
+ *     image = ImageIO.read(file);
+ *     stage.pixels((long) image.getWidth() * image.getHeight());
+ * }
+ * </pre>
+ * Накопленная статистика доступна через JMX ({@link StageMetricsMXBean}). Если задано системное
+ * свойство {@value #LOG_PROPERTY}, по завершении каждого задания ({@link Job#finish()}) в поток
+ * ошибок выводится строка JSON со всеми стадиями задания.
+ * <p>
+ * Выделенная память считается только для стадий в одном потоке: это память, выделенная потоком,
+ * начавшим измерение, поэтому параллельно выполняемые стадии, как в пакетном режиме, не влияют
+ * друг на друга. Потоки пула {@link TiledExecutor} используются несколькими стадиями одновременно,
+ * и их память нельзя отнести к одной стадии, поэтому для стадий в нескольких потоках, а также
+ * для стадий, закрытых в другом потоке, выделенная память не измеряется (-1).
+ */
+final class StageMetrics implements StageMetricsMXBean {
+
+    /**
+     * Имя MBean в платформенном сервере JMX.
+     */
+    static final String OBJECT_NAME = "org.example:type=StageMetrics";
+
+    /**
+     * Системное свойство, включающее вывод строки со статистикой каждого задания.
+     */
+    static final String LOG_PROPERTY = "dsp.metrics.log";
+
+    private static volatile StageMetrics defaultMetrics;
+
+    private final boolean log;                                      // Выводить строки заданий
+    private final Map<String, Totals> stages = new ConcurrentHashMap<>();
+    private final AtomicLong jobs = new AtomicLong();               // Завершенные задания
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean allocationSupported;                      // Доступен счетчик выделенной памяти
+
+    StageMetrics(boolean log) {
+        this.log = log;
+        this.allocationSupported = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Возвращает общую статистику, зарегистрированную в платформенном сервере JMX.
+     */
+    static StageMetrics getDefault() {
+        StageMetrics metrics = defaultMetrics;
+        if (metrics == null) {
+            synchronized (StageMetrics.class) {
+                metrics = defaultMetrics;
+                if (metrics == null) {
+                    metrics = new StageMetrics(Boolean.getBoolean(LOG_PROPERTY));
+                    try {
+                        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+                    } catch (JMException e) {
+                        // Статистика собирается и без JMX
+                        System.err.println("Не удалось зарегистрировать MBean " + OBJECT_NAME + ": " + e);
+                    }
+                    defaultMetrics = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Создает задание, стадии которого выводятся одной строкой при завершении.
+     *
+     * @param name Имя задания, например имя файла.
+     */
+    Job job(String name) {
+        return new Job(name);
+    }
+
+    /**
+     * Начинает измерение стадии, не относящейся к заданию.
+     *
+     * @param stage   Имя стадии.
+     * @param pixels  Количество обрабатываемых пикселей (можно уточнить позже).
+     * @param threads Количество потоков, выполняющих стадию.
+     */
+    Measurement measure(String stage, long pixels, int threads) {
+        return new Measurement(null, stage, pixels, threads);
+    }
+
+    /**
+     * Начинает измерение стадии задания или, если задания нет, стадии общей статистики.
+     *
+     * @param job     Задание или null.
+     * @param stage   Имя стадии.
+     * @param pixels  Количество обрабатываемых пикселей (можно уточнить позже).
+     * @param threads Количество потоков, выполняющих стадию.
+     */
+    static Measurement measure(Job job, String stage, long pixels, int threads) {
+        return job != null ? job.measure(stage, pixels, threads) : getDefault().measure(stage, pixels, threads);
+    }
+
+    /**
+     * Измеряет стадию задания или общей статистики, выполняя ее тело.
+     *
+     * @param job     Задание или null.
+     * @param stage   Имя стадии.
+     * @param pixels  Количество обрабатываемых пикселей.
+     * @param threads Количество потоков, выполняющих стадию.
+     * @param body    Тело стадии.
+     * @return Результат тела стадии.
+     * @throws E Исключение тела стадии.
+     */
+    static <T, E extends Exception> T time(Job job, String stage, long pixels, int threads,
+                                           Stage<T, E> body) throws E {
+        Measurement measurement = measure(job, stage, pixels, threads);
+        try {
+            return body.run();
+        } finally {
+            measurement.close();
+        }
+    }
+
+    /**
+     * Измеряет стадию задания или общей статистики без результата.
+     *
+     * @see #time(Job, String, long, int, Stage)
+     */
+    static <E extends Exception> void time(Job job, String stage, long pixels, int threads,
+                                           Action<E> body) throws E {
+        Measurement measurement = measure(job, stage, pixels, threads);
+        try {
+            body.run();
+        } finally {
+            measurement.close();
+        }
+    }
+
+    @Override
+    public Map<String, StageStatistics> getStages() {
+        Map<String, StageStatistics> result = new TreeMap<>();
+        stages.forEach((stage, totals) -> result.put(stage, totals.snapshot()));
+        return result;
+    }
+
+    @Override
+    public long getJobCount() {
+        return jobs.get();
+    }
+
+    @Override
+    public void reset() {
+        stages.clear();
+        jobs.set(0);
+    }
+
+    /**
+     * Возвращает объем памяти, выделенной текущим потоком за время его работы,
+     * или -1, если он не измеряется.
+     */
+    private long allocatedBytes() {
+        if (!allocationSupported) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Задание: набор стадий обработки одного изображения или одного действия пользователя.
+     * Стадии задания могут выполняться в разных потоках.
+     */
+    final class Job {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final List<String> records = new ArrayList<>();   // Стадии в формате JSON
+
+        private Job(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Начинает измерение стадии задания.
+         *
+         * @param stage   Имя стадии.
+         * @param pixels  Количество обрабатываемых пикселей (можно уточнить позже).
+         * @param threads Количество потоков, выполняющих стадию.
+         */
+        Measurement measure(String stage, long pixels, int threads) {
+            return new Measurement(this, stage, pixels, threads);
+        }
+
+        private synchronized void add(String record) {
+            records.add(record);
+        }
+
+        /**
+         * Завершает задание и, если включен вывод, выводит строку со статистикой его стадий.
+         */
+        void finish() {
+            jobs.incrementAndGet();
+            if (!log) {
+                return;
+            }
+            String stageList;
+            synchronized (this) {
+                stageList = String.join(",", records);
+            }
+            System.err.printf(Locale.ROOT, "{\"job\":%s,\"millis\":%.3f,\"stages\":[%s]}%n",
+                    quote(name), (System.nanoTime() - start) / 1e6, stageList);
+        }
+    }
+
+    /**
+     * Измерение одной стадии; результат учитывается при закрытии.
+     */
+    final class Measurement implements AutoCloseable {
+        private final Job job;
+        private final String stage;
+        private final int threadCount;
+        private long pixels;
+        private final Thread thread = Thread.currentThread();   // Поток, начавший измерение
+        private final long startBytes;                          // Память потока в начале или -1
+        private final long startNanos = System.nanoTime();
+
+        private Measurement(Job job, String stage, long pixels, int threadCount) {
+            this.job = job;
+            this.stage = stage;
+            this.pixels = pixels;
+            this.threadCount = threadCount;
+            this.startBytes = threadCount == 1 ? allocatedBytes() : -1;
+        }
+
+        /**
+         * Задает количество обработанных пикселей, если оно стало известно во время стадии.
+         */
+        void pixels(long pixels) {
+            this.pixels = pixels;
+        }
+
+        /**
+         * Возвращает память, выделенную потоком стадии с начала измерения, или -1, если она
+         * не измеряется или стадия закрыта в другом потоке.
+         */
+        private long allocatedSince() {
+            if (startBytes < 0 || Thread.currentThread() != thread) {
+                return -1;
+            }
+            long endBytes = allocatedBytes();
+            return endBytes >= 0 ? endBytes - startBytes : -1;
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - startNanos;
+            long bytes = allocatedSince();
+            stages.computeIfAbsent(stage, name -> new Totals()).add(nanos, pixels, bytes, threadCount);
+            if (job != null) {
+                double millis = nanos / 1e6;
+                job.add(String.format(Locale.ROOT,
+                        "{\"stage\":%s,\"millis\":%.3f,\"pixels\":%d,\"pixelsPerSecond\":%.0f,"
+                                + "\"allocatedBytes\":%d,\"threads\":%d}",
+                        quote(stage), millis, pixels, millis > 0 ? pixels * 1000 / millis : 0, bytes, threadCount));
+            }
+        }
+    }
+
+    /**
+     * Тело стадии с результатом для {@link #time(Job, String, long, int, Stage)}.
+     */
+    @FunctionalInterface
+    interface Stage<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Тело стадии без результата для {@link #time(Job, String, long, int, Action)}.
+     */
+    @FunctionalInterface
+    interface Action<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * Накопленные значения одной стадии.
+     */
+    private static final class Totals {
+        private long count;
+        private long nanos;
+        private long maxNanos;
+        private long pixels;
+        private long bytes;
+        private int threads;
+
+        synchronized void add(long nanos, long pixels, long bytes, int threads) {
+            this.count++;
+            this.nanos += nanos;
+            this.maxNanos = Math.max(maxNanos, nanos);
+            this.pixels += pixels;
+            // Если счетчик памяти недоступен, сумма остается равной -1
+            this.bytes = bytes >= 0 && this.bytes >= 0 ? this.bytes + bytes : -1;
+            this.threads = threads;
+        }
+
+        synchronized StageStatistics snapshot() {
+            return new StageStatistics(count, nanos / 1e6, maxNanos / 1e6, pixels, bytes, threads);
+        }
+    }
+
+    /**
+     * Записывает строку в кавычках JSON.
+     */
+    private static String quote(String value) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
@@ -0,0 +1,100 @@
+package org.example;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+
+/**
+ * Интерфейс JMX для статистики стадий обработки ({@link StageMetrics}).
+ * Регистрируется под именем {@value StageMetrics#OBJECT_NAME} и доступен, например, в JConsole.
+ */
+public interface StageMetricsMXBean {
+
+    /**
+     * @return Статистика по именам стадий ({@code decode}, {@code noise}, {@code filter.MEDIAN} и т.д.).
+     */
+    Map<String, StageStatistics> getStages();
+
+    /**
+     * @return Количество завершенных заданий (изображений пакета или действий в интерфейсе).
+     */
+    long getJobCount();
+
+    /**
+     * Обнуляет статистику.
+     */
+    void reset();
+
+    /**
+     * Накопленная статистика одной стадии.
+     */
+    final class StageStatistics {
+        private final long count;
+        private final double totalMillis;
+        private final double maxMillis;
+        private final long pixels;
+        private final long allocatedBytes;
+        private final int threads;
+
+        @ConstructorProperties({"count", "totalMillis", "maxMillis", "pixels", "allocatedBytes", "threads"})
+        public StageStatistics(long count, double totalMillis, double maxMillis, long pixels,
+                               long allocatedBytes, int threads) {
+            this.count = count;
+            this.totalMillis = totalMillis;
+            this.maxMillis = maxMillis;
+            this.pixels = pixels;
+            this.allocatedBytes = allocatedBytes;
+            this.threads = threads;
+        }
+
+        /**
+         * @return Количество выполнений стадии.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return Суммарное время выполнения в миллисекундах.
+         */
+        public double getTotalMillis() {
+            return totalMillis;
+        }
+
+        /**
+         * @return Наибольшее время одного выполнения в миллисекундах.
+         */
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        /**
+         * @return Суммарное количество обработанных пикселей.
+         */
+        public long getPixels() {
+            return pixels;
+        }
+
+        /**
+         * @return Средняя скорость обработки в пикселях в секунду.
+         */
+        public double getPixelsPerSecond() {
+            return totalMillis > 0 ? pixels * 1000.0 / totalMillis : 0;
+        }
+
+        /**
+         * @return Суммарный объем памяти, выделенной во время выполнения, в байтах
+         * или -1, если JVM не измеряет выделение памяти потоками или стадия выполнялась
+         * в нескольких потоках.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return Количество потоков при последнем выполнении стадии.
+         */
+        public int getThreads() {
+            return threads;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.example;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Фильтрация изображений, которые не помещаются в память, горизонтальными полосами.
+ * <p>
+ * Исходное изображение читается полосами через {@link ImageReadParam#setSourceRegion}, каждая
+ * полоса вместе с полями по {@code maskSize / 2} строк сверху и снизу фильтруется, и ее строки
+ * сразу записываются в выходной файл через {@link ImageWriter#replacePixels}. Поэтому объем
+ * памяти пропорционален ширине изображения, умноженной на высоту полосы, а не размеру изображения.
+ * <p>
+ * Построчная запись требует формата с поддержкой {@link ImageWriter#canWriteEmpty()}; из
+ * стандартных форматов это TIFF. Чтение полосами эффективнее всего для TIFF; читатель PNG
+ * при каждом обращении заново распаковывает строки до нужной полосы, хотя и не хранит их.
+ */
+final class StripProcessor {
+
+    /**
+     * Описание параметров командной строки.
+     */
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Использование: SpatialFiltering --stream <исходный файл> <файл результата> [параметры]",
+            "  --filter <тип>            MEDIAN, HARMONIC_MEAN или SWITCHING_MEDIAN (по умолчанию MEDIAN)",
+            "  --mask <размер>           нечетный размер маски (по умолчанию 3)",
+            "  --strip <строки>          высота полосы (по умолчанию " + StripProcessor.DEFAULT_STRIP_HEIGHT + ")",
+            "  --format <формат>         формат результата (по умолчанию tiff)");
+
+    /**
+     * Высота полосы по умолчанию.
+     */
+    static final int DEFAULT_STRIP_HEIGHT = 256;
+
+    private final SpatialFiltering.FilterType filterType;  // Тип фильтра
+    private final int maskSize;                            // Размер маски фильтра
+    private final int stripHeight;                         // Высота полосы
+    private final TiledExecutor executor;                  // Исполнитель для фильтрации полосы
+
+    StripProcessor(SpatialFiltering.FilterType filterType, int maskSize, int stripHeight, TiledExecutor executor) {
+        if (maskSize < 1 || maskSize % 2 == 0) {
+            throw new IllegalArgumentException("Размер маски должен быть нечетным: " + maskSize);
+        }
+        if (stripHeight < 1) {
+            throw new IllegalArgumentException("Высота полосы должна быть положительной: " + stripHeight);
+        }
+        this.filterType = filterType;
+        this.maskSize = maskSize;
+        this.stripHeight = stripHeight;
+        this.executor = executor;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            Path input = null;
+            Path output = null;
+            SpatialFiltering.FilterType filterType = SpatialFiltering.FilterType.MEDIAN;
+            int maskSize = 3;
+            int stripHeight = DEFAULT_STRIP_HEIGHT;
+            String format = "tiff";
+
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    if (input == null) {
+                        input = Paths.get(arg);
+                    } else if (output == null) {
+                        output = Paths.get(arg);
+                    } else {
+                        throw new IllegalArgumentException("Лишний параметр: " + arg);
+                    }
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Не указано значение параметра " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--filter":
+                        filterType = SpatialFiltering.FilterType.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--mask":
+                        maskSize = Integer.parseInt(value);
+                        break;
+                    case "--strip":
+                        stripHeight = Integer.parseInt(value);
+                        break;
+                    case "--format":
+                        format = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+                }
+            }
+            if (input == null || output == null) {
+                throw new IllegalArgumentException("Не указаны исходный файл и файл результата");
+            }
+
+            long start = System.nanoTime();
+            new StripProcessor(filterType, maskSize, stripHeight, TiledExecutor.getDefault())
+                    .process(input, output, format);
+            System.out.printf(Locale.ROOT, "Изображение отфильтровано: %s, время: %.2f с%n",
+                    output, (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Фильтрует изображение полосами и записывает результат в файл.
+     *
+     * @param input  Исходный файл изображения.
+     * @param output Файл результата; перезаписывается.
+     * @param format Имя формата результата, поддерживающего построчную запись (например, tiff).
+     * @throws IOException Если не удалось прочитать или записать изображение.
+     */
+    void process(Path input, Path output, String format) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(input.toFile())) {
+            if (in == null) {
+                throw new IOException("Не удалось открыть файл " + input);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Неподдерживаемый формат изображения: " + input);
+            }
+            ImageReader reader = readers.next();
+            try {
+                // Полосы читаются в произвольном порядке, поэтому поток не должен быть только прямым
+                reader.setInput(in, false, true);
+                Files.deleteIfExists(output);
+                try (ImageOutputStream out = ImageIO.createImageOutputStream(output.toFile())) {
+                    ImageWriter writer = findWriter(format, out);
+                    try {
+                        filterStrips(reader, writer);
+                    } finally {
+                        writer.dispose();
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Читает, фильтрует и записывает изображение полоса за полосой.
+     */
+    private void filterStrips(ImageReader reader, ImageWriter writer) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        int halo = maskSize / 2;
+
+        // Все полосы читаются в одном типе, в нем же создается файл результата
+        ImageTypeSpecifier type = reader.getImageTypes(0).next();
+        writer.prepareWriteEmpty(null, type, width, height, null, null, writer.getDefaultWriteParam());
+        writer.prepareReplacePixels(0, new Rectangle(width, height));
+
+        for (int fromRow = 0; fromRow < height; fromRow += stripHeight) {
+            int toRow = Math.min(height, fromRow + stripHeight);
+
+            // Полоса читается вместе с полями, не выходящими за границы изображения;
+            // у границ изображения поля заменяются повторением крайних строк, как и при обработке целиком
+            int readFrom = Math.max(0, fromRow - halo);
+            int readTo = Math.min(height, toRow + halo);
+            ImageReadParam readParam = reader.getDefaultReadParam();
+            readParam.setSourceRegion(new Rectangle(0, readFrom, width, readTo - readFrom));
+            readParam.setDestinationType(type);
+            BufferedImage strip = reader.read(0, readParam);
+
+            // Фильтруются только строки полосы, поля служат для них окрестностью
+            PlanarImage source = PlanarImage.fromImage(strip);
+            PlanarImage target = new PlanarImage(width, readTo - readFrom);
+            ProcessingPipeline.applyFilter(source, target, filterType, maskSize, executor,
+                    fromRow - readFrom, toRow - readFrom);
+
+            // Изображение полосы больше не нужно и используется как буфер для результата
+            target.writeTo(strip);
+            Raster rows = strip.getRaster().createChild(0, fromRow - readFrom, width, toRow - fromRow, 0, 0, null);
+            ImageWriteParam writeParam = writer.getDefaultWriteParam();
+            writeParam.setDestinationOffset(new Point(0, fromRow));
+            writer.replacePixels(rows, writeParam);
+        }
+
+        writer.endReplacePixels();
+        writer.endWriteEmpty();
+    }
+
+    /**
+     * Находит писатель формата, поддерживающий построчную запись в заданный поток.
+     */
+    private static ImageWriter findWriter(String format, ImageOutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        while (writers.hasNext()) {
+            ImageWriter writer = writers.next();
+            writer.setOutput(out);
+            if (writer.canWriteEmpty()) {
+                return writer;
+            }
+            writer.dispose();
+        }
+        throw new IOException("Формат " + format + " не поддерживает построчную запись, используйте tiff");
+    }
+}
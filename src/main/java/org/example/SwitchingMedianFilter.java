@@ -0,0 +1,214 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * Переключающийся медианный фильтр для импульсного шума.
+ * <p>
+ * Импульсный шум заменяет пиксель белой или черной точкой одинаково во всех каналах.
+ * Поэтому фильтр сначала за один проход отмечает пиксели-кандидаты: все каналы равны 0 или все
+ * равны 255. Остальные пиксели копируются без изменений, а для кандидатов вычисляется медиана
+ * только тех соседей, которые сами не являются кандидатами. Соседи берутся из наименьшего окна,
+ * начиная с 3x3, в котором они есть; размер маски ограничивает рост окна. Если неповрежденных
+ * соседей нет во всей маске, используется обычная медиана по маске.
+ * <p>
+ * При плотности шума около 10% медиана вычисляется примерно для каждого десятого пикселя,
+ * а контуры и мелкие детали неповрежденных участков не размываются.
+ */
+final class SwitchingMedianFilter {
+
+    private SwitchingMedianFilter() {
+    }
+
+    /**
+     * Применяет фильтр ко всем каналам изображения.
+     *
+     * @param source   Исходное изображение.
+     * @param target   Изображение того же размера для результата.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param executor Исполнитель, распределяющий полосы строк по потокам.
+     */
+    static void apply(PlanarImage source, PlanarImage target, int maskSize, TiledExecutor executor) {
+        apply(source, target, maskSize, executor, 0, source.getHeight());
+    }
+
+    /**
+     * Применяет фильтр ко всем каналам в диапазоне строк изображения; остальные строки
+     * результата не изменяются.
+     *
+     * @param source   Исходное изображение.
+     * @param target   Изображение того же размера для результата.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param executor Исполнитель, распределяющий полосы строк по потокам.
+     * @param firstRow Первая обрабатываемая строка (включительно).
+     * @param lastRow  Строка, следующая за последней обрабатываемой.
+     */
+    static void apply(PlanarImage source, PlanarImage target, int maskSize, TiledExecutor executor,
+                      int firstRow, int lastRow) {
+        int markedFrom = Math.max(0, firstRow - maskSize / 2);
+        boolean[] impulses = markImpulses(source, maskSize, executor, firstRow, lastRow);
+        executor.forEachBand(firstRow, lastRow, (fromRow, toRow) ->
+                filterRows(source, target, impulses, markedFrom, maskSize, fromRow, toRow));
+    }
+
+    /**
+     * Применяет фильтр к одному каналу изображения. Кандидаты определяются по всем каналам,
+     * поэтому результат совпадает с этим каналом при фильтрации всего изображения.
+     *
+     * @param source   Исходное изображение.
+     * @param channel  Индекс фильтруемого канала.
+     * @param target   Одноканальное изображение того же размера для результата.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param executor Исполнитель, распределяющий полосы строк по потокам.
+     */
+    static void applyToChannel(PlanarImage source, int channel, PlanarImage target, int maskSize,
+                               TiledExecutor executor) {
+        applyToChannel(source, channel, target, maskSize, executor, 0, source.getHeight());
+    }
+
+    /**
+     * Применяет фильтр к одному каналу в диапазоне строк изображения; остальные строки
+     * результата не изменяются.
+     *
+     * @param source   Исходное изображение.
+     * @param channel  Индекс фильтруемого канала.
+     * @param target   Одноканальное изображение того же размера для результата.
+     * @param maskSize Размер маски фильтра (нечетное число).
+     * @param executor Исполнитель, распределяющий полосы строк по потокам.
+     * @param firstRow Первая обрабатываемая строка (включительно).
+     * @param lastRow  Строка, следующая за последней обрабатываемой.
+     */
+    static void applyToChannel(PlanarImage source, int channel, PlanarImage target, int maskSize,
+                               TiledExecutor executor, int firstRow, int lastRow) {
+        int markedFrom = Math.max(0, firstRow - maskSize / 2);
+        boolean[] impulses = markImpulses(source, maskSize, executor, firstRow, lastRow);
+        PlanarImage plane = source.channel(channel);
+        executor.forEachBand(firstRow, lastRow, (fromRow, toRow) ->
+                filterRows(plane, target, impulses, markedFrom, maskSize, fromRow, toRow));
+    }
+
+    /**
+     * Отмечает кандидатов в строках с {@code firstRow} по {@code lastRow} и в полях маски над и под ними.
+     * Отметки хранятся только для этих строк, начиная со строки {@code max(0, firstRow - maskSize / 2)},
+     * поэтому при постепенной фильтрации память и время разметки пропорциональны высоте полосы.
+     */
+    private static boolean[] markImpulses(PlanarImage source, int maskSize, TiledExecutor executor,
+                                          int firstRow, int lastRow) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int offset = maskSize / 2;
+        int markFrom = Math.max(0, firstRow - offset);
+        int markTo = Math.min(height, lastRow + offset);
+        boolean[] impulses = new boolean[(markTo - markFrom) * width];
+        executor.forEachBand(markFrom, markTo, (fromRow, toRow) ->
+                markImpulses(source, impulses, markFrom * width, width, fromRow, toRow));
+        return impulses;
+    }
+
+    /**
+     * Отмечает пиксели, похожие на импульсный шум: все каналы равны 0 или все равны 255.
+     * У одноканального изображения проверяется только значение единственного канала.
+     *
+     * @param base Индекс пикселя, соответствующего первому элементу {@code impulses}.
+     */
+    private static void markImpulses(PlanarImage image, boolean[] impulses, int base, int width,
+                                     int fromRow, int toRow) {
+        byte[] first = image.getPlane(0);
+        int from = fromRow * width;
+        int to = toRow * width;
+        for (int i = from; i < to; i++) {
+            byte value = first[i];
+            impulses[i - base] = value == 0 || value == (byte) 0xFF;
+        }
+        for (int c = 1; c < image.getChannelCount(); c++) {
+            byte[] plane = image.getPlane(c);
+            for (int i = from; i < to; i++) {
+                impulses[i - base] &= plane[i] == first[i];
+            }
+        }
+    }
+
+    /**
+     * Применяет фильтр к полосе строк всех каналов изображения.
+     * <p>
+     * Положения неповрежденных соседей одинаковы для всех каналов, поэтому они собираются
+     * один раз на пиксель, а медиана вычисляется по каждому каналу отдельно.
+     *
+     * @param source     Исходное изображение.
+     * @param target     Изображение того же размера для результата.
+     * @param impulses   Отметки пикселей-кандидатов для строк полосы и полей маски.
+     * @param markedFrom Строка изображения, соответствующая первой строке отметок.
+     * @param maskSize   Размер маски фильтра (нечетное число).
+     * @param fromRow    Первая обрабатываемая строка (включительно).
+     * @param toRow      Последняя обрабатываемая строка (исключительно).
+     */
+    static void filterRows(PlanarImage source, PlanarImage target, boolean[] impulses, int markedFrom,
+                           int maskSize, int fromRow, int toRow) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int channels = source.getChannelCount();
+        int offset = maskSize / 2;
+        int base = markedFrom * width;      // Индекс пикселя первой отметки
+
+        // Индексы пикселей маски: сначала неповрежденные соседи, при их отсутствии - все пиксели маски
+        int[] neighbours = new int[maskSize * maskSize];
+        int[] window = new int[maskSize * maskSize];
+
+        for (int y = fromRow; y < toRow; y++) {
+            int rowStart = y * width;
+            // Неповрежденные пиксели переносятся без изменений
+            for (int c = 0; c < channels; c++) {
+                System.arraycopy(source.getPlane(c), rowStart, target.getPlane(c), rowStart, width);
+            }
+
+            for (int x = 0; x < width; x++) {
+                if (!impulses[rowStart + x - base]) {
+                    continue;
+                }
+
+                // Собираем неповрежденных соседей в наименьшем окне, где они есть,
+                // увеличивая окно от 3x3 до размера маски
+                int count = 0;
+                for (int radius = 1; radius <= offset && count == 0; radius++) {
+                    for (int ky = -radius; ky <= radius; ky++) {
+                        int row = clamp(y + ky, height) * width;
+                        for (int kx = -radius; kx <= radius; kx++) {
+                            int index = row + clamp(x + kx, width);
+                            if (!impulses[index - base]) {
+                                neighbours[count++] = index;
+                            }
+                        }
+                    }
+                }
+                // Вся маска состоит из кандидатов - берем обычную медиану
+                boolean fallback = count == 0;
+                if (fallback) {
+                    for (int ky = -offset; ky <= offset; ky++) {
+                        int row = clamp(y + ky, height) * width;
+                        for (int kx = -offset; kx <= offset; kx++) {
+                            neighbours[count++] = row + clamp(x + kx, width);
+                        }
+                    }
+                }
+
+                for (int c = 0; c < channels; c++) {
+                    byte[] src = source.getPlane(c);
+                    for (int k = 0; k < count; k++) {
+                        window[k] = src[neighbours[k]] & 0xFF;
+                    }
+                    Arrays.sort(window, 0, count);
+                    // При четном количестве соседей медиана равна среднему двух средних значений
+                    int value = fallback ? window[count / 2] : (window[(count - 1) / 2] + window[count / 2] + 1) >> 1;
+                    target.getPlane(c)[rowStart + x] = (byte) value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Ограничивает координату диапазоном [0, size - 1].
+     */
+    private static int clamp(int value, int size) {
+        return Math.min(Math.max(value, 0), size - 1);
+    }
+}
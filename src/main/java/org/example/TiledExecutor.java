@@ -0,0 +1,164 @@
+package org.example;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Параллельное выполнение фильтров по горизонтальным полосам изображения.
+ * <p>
+ * Изображение делится на полосы строк, которые обрабатываются в {@link ForkJoinPool}.
+ * Каждая полоса читает исходное изображение вместе с полями по {@code maskSize / 2} строк
+ * сверху и снизу, а записывает только свои строки результата. Поэтому полосы не пересекаются
+ * по записи и не требуют блокировок, а результат совпадает с последовательной обработкой.
+ * <p>
+ * Степень параллелизма по умолчанию равна количеству процессоров и может быть задана
+ * системным свойством {@value #PARALLELISM_PROPERTY}.
+ * <p>
+ * Исполнитель со степенью параллелизма больше 1 владеет собственным пулом потоков, поэтому
+ * созданный исполнитель нужно закрыть ({@link #close()}), когда он больше не нужен.
+ * Общий исполнитель {@link #getDefault()} живет до завершения программы и не закрывается.
+ */
+final class TiledExecutor implements AutoCloseable {
+
+    /**
+     * Системное свойство для задания степени параллелизма по умолчанию.
+     */
+    static final String PARALLELISM_PROPERTY = "dsp.parallelism";
+
+    /**
+     * Минимальная высота полосы: более мелкие полосы не окупают затрат на поля и задачи.
+     */
+    private static final int MIN_BAND_HEIGHT = 16;
+
+    /**
+     * Количество полос на один поток, чтобы сгладить неравномерную загрузку потоков.
+     */
+    private static final int BANDS_PER_THREAD = 4;
+
+    private static volatile TiledExecutor defaultExecutor;
+
+    private final int parallelism;   // Степень параллелизма
+    private final ForkJoinPool pool; // Пул потоков или null для последовательного выполнения
+
+    /**
+     * Обработчик полосы строк изображения.
+     */
+    interface BandTask {
+        /**
+         * Обрабатывает строки с {@code fromRow} (включительно) по {@code toRow} (исключительно).
+         */
+        void run(int fromRow, int toRow);
+    }
+
+    /**
+     * Создает исполнитель с заданной степенью параллелизма.
+     *
+     * @param parallelism Количество потоков; 1 означает последовательную обработку в вызывающем потоке.
+     */
+    TiledExecutor(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Степень параллелизма должна быть положительной: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Возвращает общий исполнитель со степенью параллелизма по умолчанию.
+     */
+    static TiledExecutor getDefault() {
+        TiledExecutor executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (TiledExecutor.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    int processors = Runtime.getRuntime().availableProcessors();
+                    executor = new TiledExecutor(Integer.getInteger(PARALLELISM_PROPERTY, processors));
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Завершает пул потоков исполнителя; после закрытия полосы не обрабатываются параллельно
+     * ({@link java.util.concurrent.RejectedExecutionException}). Для общего исполнителя ничего не делает.
+     */
+    @Override
+    public void close() {
+        if (pool != null && this != defaultExecutor) {
+            pool.shutdown();
+        }
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Возвращает наименьшее количество строк, которое делится на полосы для всех потоков.
+     * Более низкие диапазоны строк обрабатываются не всеми потоками.
+     */
+    int getMinParallelRows() {
+        return parallelism * MIN_BAND_HEIGHT;
+    }
+
+    /**
+     * Обрабатывает все строки изображения полосами и ожидает завершения обработки.
+     *
+     * @param height Высота изображения.
+     * @param task   Обработчик полосы строк.
+     */
+    void forEachBand(int height, BandTask task) {
+        forEachBand(0, height, task);
+    }
+
+    /**
+     * Обрабатывает полосами строки с {@code fromRow} (включительно) по {@code toRow} (исключительно)
+     * и ожидает завершения обработки.
+     *
+     * @param fromRow Первая обрабатываемая строка.
+     * @param toRow   Строка, следующая за последней обрабатываемой.
+     * @param task    Обработчик полосы строк.
+     */
+    void forEachBand(int fromRow, int toRow, BandTask task) {
+        int rows = toRow - fromRow;
+        if (pool == null || rows <= MIN_BAND_HEIGHT) {
+            task.run(fromRow, toRow);
+            return;
+        }
+        int bandHeight = Math.max(MIN_BAND_HEIGHT, rows / (parallelism * BANDS_PER_THREAD));
+        pool.invoke(new BandAction(task, fromRow, toRow, bandHeight));
+    }
+
+    /**
+     * Рекурсивно делит диапазон строк пополам, пока он не станет не больше одной полосы.
+     */
+    private static final class BandAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BandTask task;
+        private final int fromRow;
+        private final int toRow;
+        private final int bandHeight;
+
+        BandAction(BandTask task, int fromRow, int toRow, int bandHeight) {
+            this.task = task;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.bandHeight = bandHeight;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= bandHeight) {
+                task.run(fromRow, toRow);
+                return;
+            }
+            int middle = (fromRow + toRow) >>> 1;
+            invokeAll(new BandAction(task, fromRow, middle, bandHeight),
+                    new BandAction(task, middle, toRow, bandHeight));
+        }
+    }
+}
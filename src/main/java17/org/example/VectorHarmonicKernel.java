@@ -0,0 +1,49 @@
+package org.example;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Векторное ядро среднегармонического фильтра на Vector API (Java 17+).
+ * <p>
+ * Суммы по окнам вычисляются сразу для нескольких соседних пикселей в {@code long}-дорожках,
+ * а деление выполняется в {@code double}-дорожках той же ширины. Вычисления совпадают со
+ * скалярным ядром {@link HarmonicMeanFilter#meanRow}, которое также обрабатывает хвост строки.
+ * <p>
+ * Загружается из {@link HarmonicMeanFilter} через отражение; если модуль
+ * {@code jdk.incubator.vector} не подключен, загрузка завершается ошибкой и используется скалярное ядро.
+ */
+final class VectorHarmonicKernel implements HarmonicMeanFilter.RowKernel {
+
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    VectorHarmonicKernel() {
+        // Без аппаратной поддержки векторы эмулируются и работают медленнее скалярного кода
+        if (LONGS.length() < 2 || DOUBLES.length() != LONGS.length()) {
+            throw new UnsupportedOperationException("Векторные регистры недоступны");
+        }
+    }
+
+    @Override
+    public void meanRow(long[] table, int top, int bottom, int maskSize, double[] means, int width) {
+        DoubleVector area = DoubleVector.broadcast(DOUBLES, maskSize * maskSize);
+        double unscale = 1 / HarmonicMeanFilter.SCALE;
+
+        int x = 0;
+        for (int bound = LONGS.loopBound(width); x < bound; x += LONGS.length()) {
+            // Сумма обратных значений по окнам соседних пикселей
+            LongVector sum = LongVector.fromArray(LONGS, table, bottom + x + maskSize)
+                    .sub(LongVector.fromArray(LONGS, table, top + x + maskSize))
+                    .sub(LongVector.fromArray(LONGS, table, bottom + x))
+                    .add(LongVector.fromArray(LONGS, table, top + x));
+
+            // Умножение на степень двойки точное, поэтому результат совпадает со скалярным делением
+            DoubleVector reciprocalMean = ((DoubleVector) sum.convert(VectorOperators.L2D, 0)).mul(unscale);
+            area.div(reciprocalMean).min(255.0).max(0.0).intoArray(means, x);
+        }
+        HarmonicMeanFilter.meanRow(table, top, bottom, maskSize, means, x, width);
+    }
+}
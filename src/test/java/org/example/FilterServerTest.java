@@ -0,0 +1,459 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * HTTP-сервис фильтрации: ответы на ошибки запросов, отклонение запросов при заполненной очереди
+ * и исчерпанном бюджете пикселей, объединение малых изображений в пакеты, работа диспетчера после
+ * ошибок и остановка сервера с запросами в очереди.
+ * <p>
+ * Чтобы очередь заполнялась без расчета на время обработки, тест регистрирует формат {@code HANG},
+ * декодирование которого ожидает разрешения теста: пока изображение этого формата декодируется,
+ * диспетчер занят, и остальные запросы остаются в очереди.
+ */
+class FilterServerTest {
+
+    private static final long WAIT_SECONDS = 10;
+
+    private static volatile CountDownLatch decoding;    // Диспетчер начал декодировать HANG
+    private static volatile CountDownLatch release;     // Декодирование HANG можно завершить
+
+    private final HangingReaderSpi spi = new HangingReaderSpi();
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private FilterServer server;
+    private boolean stopped;
+
+    @BeforeEach
+    void registerFormat() {
+        decoding = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        IIORegistry.getDefaultInstance().registerServiceProvider(spi);
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        if (server != null && !stopped) {
+            server.stop();
+        }
+        IIORegistry.getDefaultInstance().deregisterServiceProvider(spi);
+    }
+
+    @Test
+    void returnsFilteredImage() throws Exception {
+        start(options());
+        BufferedImage image = randomImage(32, 24);
+
+        HttpResponse<byte[]> response = post("filter=MEDIAN&mask=3", png(image));
+        assertEquals(200, response.statusCode());
+        assertEquals("image/png", response.headers().firstValue("Content-Type").orElse(""));
+
+        BufferedImage expected = new ProcessingPipeline()
+                .filter(SpatialFiltering.FilterType.MEDIAN, 3).run(image).filteredImage();
+        BufferedImage actual = ImageIO.read(new ByteArrayInputStream(response.body()));
+        assertArrayEquals(pixels(expected), pixels(actual));
+        assertEquals(1, stat("completed"));
+    }
+
+    @Test
+    void rejectsRequestWhenQueueIsFull() throws Exception {
+        FilterServer.Options options = options();
+        options.queueCapacity = 2;
+        start(options);
+
+        // Первый запрос декодируется диспетчером, второй ждет в очереди
+        CompletableFuture<HttpResponse<byte[]>> processing = postAsync("filter=MEDIAN", hanging(64, 64));
+        awaitDecoding();
+        CompletableFuture<HttpResponse<byte[]>> queued = postAsync("filter=MEDIAN", png(randomImage(8, 8)));
+        awaitStat("queueDepth", 1);
+
+        HttpResponse<byte[]> rejected = post("filter=MEDIAN", png(randomImage(8, 8)));
+        assertEquals(429, rejected.statusCode());
+        assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(""));
+        assertTrue(text(rejected).contains("Очередь"), text(rejected));
+        assertEquals(1, stat("rejected"));
+
+        release.countDown();
+        assertEquals(200, processing.get(WAIT_SECONDS, TimeUnit.SECONDS).statusCode());
+        assertEquals(200, queued.get(WAIT_SECONDS, TimeUnit.SECONDS).statusCode());
+        assertEquals(2, stat("completed"));
+        assertEquals(0, stat("inFlight"));
+    }
+
+    @Test
+    void rejectsRequestWhenPixelBudgetIsExhausted() throws Exception {
+        FilterServer.Options options = options();
+        options.inflightPixels = 1 << 20;
+        start(options);
+
+        // Изображение больше бюджета занимает весь бюджет
+        CompletableFuture<HttpResponse<byte[]>> processing = postAsync("filter=MEDIAN", hanging(2048, 1024));
+        awaitDecoding();
+        assertEquals(1 << 20, stat("inFlightPixels"));
+
+        HttpResponse<byte[]> rejected = post("filter=MEDIAN", png(randomImage(8, 8)));
+        assertEquals(429, rejected.statusCode());
+        assertTrue(text(rejected).contains("бюджет"), text(rejected));
+
+        release.countDown();
+        assertEquals(200, processing.get(WAIT_SECONDS, TimeUnit.SECONDS).statusCode());
+        assertEquals(200, post("filter=MEDIAN", png(randomImage(8, 8))).statusCode());
+        assertEquals(0, stat("inFlightPixels"));
+    }
+
+    @Test
+    void rejectsOversizedRequests() throws Exception {
+        FilterServer.Options options = options();
+        options.maxBytes = 4096;
+        options.maxPixels = 400;
+        start(options);
+
+        byte[] body = new byte[8192];
+        new Random(1).nextBytes(body);
+        HttpResponse<byte[]> tooManyBytes = post("filter=MEDIAN", body);
+        assertEquals(413, tooManyBytes.statusCode());
+        assertTrue(text(tooManyBytes).contains("4096 байт"), text(tooManyBytes));
+
+        HttpResponse<byte[]> tooManyPixels = post("filter=MEDIAN", png(randomImage(21, 20)));
+        assertEquals(413, tooManyPixels.statusCode());
+        assertTrue(text(tooManyPixels).contains("400 пикселей"), text(tooManyPixels));
+
+        assertEquals(200, post("filter=MEDIAN", png(randomImage(20, 20))).statusCode());
+    }
+
+    @Test
+    void sizeLimitsAreParsedInMegabytesAndMegapixels() {
+        FilterServer.Options options = FilterServer.Options.parse(new String[]{
+                "--max-bytes", "3", "--max-pixels", "5", "--max-inflight-pixels", "7"});
+        assertEquals(3L << 20, options.maxBytes);
+        assertEquals(5_000_000L, options.maxPixels);
+        assertEquals(7_000_000L, options.inflightPixels);
+    }
+
+    @Test
+    void rejectsCorruptAndUnknownImages() throws Exception {
+        start(options());
+        byte[] png = png(randomImage(64, 64));
+
+        assertEquals(415, post("filter=MEDIAN", "not an image".getBytes(StandardCharsets.UTF_8)).statusCode());
+        // Заголовок PNG оборван до размеров изображения
+        HttpResponse<byte[]> header = post("filter=MEDIAN", Arrays.copyOf(png, 20));
+        assertEquals(400, header.statusCode());
+        assertTrue(text(header).contains("заголовок"), text(header));
+        // Заголовок цел, данные изображения оборваны
+        assertEquals(400, post("filter=MEDIAN", Arrays.copyOf(png, png.length / 2)).statusCode());
+        // Неверные параметры
+        assertEquals(400, post("filter=MEDIAN&mask=4", png).statusCode());
+        assertEquals(400, post("", png).statusCode());
+
+        assertEquals(5, stat("failed"));
+        assertEquals(200, post("filter=MEDIAN", png).statusCode());
+    }
+
+    @Test
+    void dispatcherSurvivesErrorInProcessing() throws Exception {
+        start(options());
+
+        // Ошибка (не исключение) при декодировании в потоке диспетчера
+        HttpResponse<byte[]> error = post("filter=MEDIAN", image("BOOM", 8, 8));
+        assertEquals(500, error.statusCode());
+
+        assertEquals(200, post("filter=MEDIAN", png(randomImage(8, 8))).statusCode());
+        assertEquals(1, stat("failed"));
+        assertEquals(1, stat("completed"));
+    }
+
+    @Test
+    void smallQueuedImagesAreBatched() throws Exception {
+        FilterServer.Options options = options();
+        options.batchSize = 3;
+        start(options);
+
+        CompletableFuture<HttpResponse<byte[]>> processing = postAsync("filter=MEDIAN", hanging(64, 64));
+        awaitDecoding();
+        List<CompletableFuture<HttpResponse<byte[]>>> queued = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            queued.add(postAsync("filter=HARMONIC_MEAN", png(randomImage(16 + i, 16))));
+            awaitStat("queueDepth", i + 1);
+        }
+
+        release.countDown();
+        assertEquals(200, processing.get(WAIT_SECONDS, TimeUnit.SECONDS).statusCode());
+        for (CompletableFuture<HttpResponse<byte[]>> response : queued) {
+            assertEquals(200, response.get(WAIT_SECONDS, TimeUnit.SECONDS).statusCode());
+        }
+        // Четыре изображения в очереди: пакет из трех и одно изображение отдельно
+        assertEquals(1, stat("batches"));
+        assertEquals(3, stat("batchedImages"));
+        assertEquals(5, stat("completed"));
+        assertEquals(5, stat("samples"));
+    }
+
+    @Test
+    void stopFailsQueuedRequests() throws Exception {
+        start(options());
+
+        CompletableFuture<HttpResponse<byte[]>> processing = postAsync("filter=MEDIAN", hanging(64, 64));
+        awaitDecoding();
+        List<CompletableFuture<HttpResponse<byte[]>>> queued = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            queued.add(postAsync("filter=MEDIAN", png(randomImage(8, 8))));
+            awaitStat("queueDepth", i + 1);
+        }
+
+        server.stop();
+        stopped = true;
+        assertEquals(0, stat("queueDepth"));
+
+        // Запросы не остаются без ответа: соединение закрывается или возвращается ошибка
+        queued.add(processing);
+        for (CompletableFuture<HttpResponse<byte[]>> response : queued) {
+            try {
+                assertNotEquals(200, response.get(WAIT_SECONDS, TimeUnit.SECONDS).statusCode());
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException, e.getCause().toString());
+            }
+        }
+    }
+
+    private static FilterServer.Options options() {
+        FilterServer.Options options = FilterServer.Options.parse(new String[]{"--port", "0", "--workers", "2"});
+        options.inflightPixels = 64L << 20;
+        return options;
+    }
+
+    private void start(FilterServer.Options options) throws IOException {
+        server = new FilterServer(options);
+        server.start();
+    }
+
+    private HttpResponse<byte[]> post(String query, byte[] body) throws Exception {
+        return postAsync(query, body).get(WAIT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> postAsync(String query, byte[] body) {
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/filter?" + query);
+        HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Возвращает числовое поле статистики, прочитанной через {@code GET /stats}.
+     */
+    private long stat(String name) throws Exception {
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/stats");
+        String json = stopped ? server.statistics()
+                : client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString()).body();
+        Matcher matcher = Pattern.compile("\"" + name + "\":(\\d+)").matcher(json);
+        if (!matcher.find()) {
+            fail("Нет поля " + name + " в " + json);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static void awaitDecoding() throws InterruptedException {
+        assertTrue(decoding.await(WAIT_SECONDS, TimeUnit.SECONDS), "Диспетчер не начал декодирование");
+    }
+
+    private void awaitStat(String name, long value) throws Exception {
+        await(() -> {
+            try {
+                return stat(name) == value;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, name + " = " + value);
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Не дождались " + description);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static String text(HttpResponse<byte[]> response) {
+        return new String(response.body(), StandardCharsets.UTF_8);
+    }
+
+    private static BufferedImage randomImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return bytes.toByteArray();
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * Изображение формата {@code HANG}: декодирование отмечает {@link #decoding} и ожидает {@link #release}.
+     */
+    private static byte[] hanging(int width, int height) {
+        return image("HANG", width, height);
+    }
+
+    /**
+     * Заголовок тестового формата: четыре символа и размеры изображения.
+     */
+    private static byte[] image(String magic, int width, int height) {
+        return ByteBuffer.allocate(12).put(magic.getBytes(StandardCharsets.US_ASCII))
+                .putInt(width).putInt(height).array();
+    }
+
+    /**
+     * Модуль чтения тестового формата: {@code HANG} декодируется в черное изображение после
+     * {@link #release}, при декодировании {@code BOOM} выбрасывается {@link StackOverflowError}.
+     */
+    private static final class HangingReaderSpi extends ImageReaderSpi {
+
+        HangingReaderSpi() {
+            super("test", "1", new String[]{"hang"}, new String[]{"hang"}, new String[]{"image/x-hang"},
+                    HangingReader.class.getName(), new Class<?>[]{ImageInputStream.class}, null,
+                    false, null, null, null, null, false, null, null, null, null);
+        }
+
+        @Override
+        public boolean canDecodeInput(Object source) throws IOException {
+            String magic = magic((ImageInputStream) source);
+            return magic.equals("HANG") || magic.equals("BOOM");
+        }
+
+        @Override
+        public ImageReader createReaderInstance(Object extension) {
+            return new HangingReader(this);
+        }
+
+        @Override
+        public String getDescription(Locale locale) {
+            return "Тестовый формат с управляемым декодированием";
+        }
+
+        static String magic(ImageInputStream input) throws IOException {
+            byte[] magic = new byte[4];
+            input.mark();
+            try {
+                input.readFully(magic);
+            } finally {
+                input.reset();
+            }
+            return new String(magic, StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static final class HangingReader extends ImageReader {
+
+        HangingReader(ImageReaderSpi spi) {
+            super(spi);
+        }
+
+        @Override
+        public int getNumImages(boolean allowSearch) {
+            return 1;
+        }
+
+        @Override
+        public int getWidth(int imageIndex) throws IOException {
+            return header(0);
+        }
+
+        @Override
+        public int getHeight(int imageIndex) throws IOException {
+            return header(1);
+        }
+
+        @Override
+        public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) {
+            return Collections.singletonList(
+                    ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_3BYTE_BGR)).iterator();
+        }
+
+        @Override
+        public IIOMetadata getStreamMetadata() {
+            return null;
+        }
+
+        @Override
+        public IIOMetadata getImageMetadata(int imageIndex) {
+            return null;
+        }
+
+        @Override
+        public BufferedImage read(int imageIndex, ImageReadParam param) throws IOException {
+            ImageInputStream input = (ImageInputStream) getInput();
+            input.seek(0);
+            if (HangingReaderSpi.magic(input).equals("BOOM")) {
+                throw new StackOverflowError("Тестовая ошибка декодирования");
+            }
+            decoding.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Декодирование прервано");
+            }
+            return new BufferedImage(getWidth(0), getHeight(0), BufferedImage.TYPE_3BYTE_BGR);
+        }
+
+        private int header(int index) throws IOException {
+            ImageInputStream input = (ImageInputStream) getInput();
+            input.seek(4 + Integer.BYTES * index);
+            return input.readInt();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Среднегармонический фильтр по таблице сумм в фиксированной точке должен отличаться от суммирования
+ * обратных значений окна в {@code double} не больше чем на один уровень яркости.
+ */
+class HarmonicMeanFilterTest {
+
+    /**
+     * Допустимое отличие от вычисления в {@code double}: округление обратных значений до 2^-32
+     * может сдвинуть результат через границу целого числа.
+     */
+    private static final int TOLERANCE = 1;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 5, 7, 11, 15})
+    void withinOneLevelOfDoubleReference(int maskSize) {
+        Random random = new Random(maskSize);
+        byte[] src = new byte[53 * 37];
+        random.nextBytes(src);
+        assertWithinTolerance(src, 53, 37, maskSize);
+    }
+
+    @Test
+    void withinOneLevelOnLargeImage() {
+        // Суммы по таблице большого изображения - разности больших чисел
+        int width = 2048;
+        int height = 1536;
+        byte[] src = new byte[width * height];
+        new Random(2).nextBytes(src);
+        assertWithinTolerance(src, width, height, 5);
+    }
+
+    @Test
+    void uniformWindowsAreExact() {
+        // Окно из нулей: среднее 1 / (1 / 1) = 1; окно из 255: 256, ограничивается 255
+        for (int maskSize : new int[]{3, 7, 15}) {
+            byte[] zeros = new byte[20 * 10];
+            assertArrayEquals(filled(zeros.length, 1), filter(zeros, 20, 10, maskSize), "нули, маска " + maskSize);
+
+            byte[] whites = filled(20 * 10, 255);
+            assertArrayEquals(filled(whites.length, 255), filter(whites, 20, 10, maskSize),
+                    "255, маска " + maskSize);
+        }
+    }
+
+    @Test
+    void uniformImagesWithinOneLevel() {
+        for (int value = 0; value < 256; value++) {
+            assertWithinTolerance(filled(9 * 8, value), 9, 8, 5);
+        }
+    }
+
+    private static void assertWithinTolerance(byte[] src, int width, int height, int maskSize) {
+        byte[] expected = reference(src, width, height, maskSize);
+        byte[] actual = filter(src, width, height, maskSize);
+        for (int i = 0; i < src.length; i++) {
+            int difference = Math.abs((expected[i] & 0xFF) - (actual[i] & 0xFF));
+            assertTrue(difference <= TOLERANCE, "маска " + maskSize + ", пиксель " + i + ": ожидалось "
+                    + (expected[i] & 0xFF) + ", получено " + (actual[i] & 0xFF));
+        }
+    }
+
+    private static byte[] filter(byte[] src, int width, int height, int maskSize) {
+        byte[] dst = new byte[src.length];
+        long[] table = new long[HarmonicMeanFilter.tableSize(width, height, maskSize)];
+        HarmonicMeanFilter.filterRows(src, dst, width, height, maskSize, 0, height, table);
+        return dst;
+    }
+
+    /**
+     * Гармоническое среднее {@code c + 1} по окну с повторением крайних пикселей, как в исходной
+     * реализации фильтра: сумма обратных значений в {@code double} и отбрасывание дробной части.
+     */
+    private static byte[] reference(byte[] src, int width, int height, int maskSize) {
+        int offset = maskSize / 2;
+        byte[] dst = new byte[src.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double sum = 0;
+                for (int dy = -offset; dy <= offset; dy++) {
+                    int row = Math.min(Math.max(y + dy, 0), height - 1);
+                    for (int dx = -offset; dx <= offset; dx++) {
+                        int col = Math.min(Math.max(x + dx, 0), width - 1);
+                        sum += 1.0 / ((src[row * width + col] & 0xFF) + 1);
+                    }
+                }
+                int mean = (int) (maskSize * maskSize / sum);
+                dst[y * width + x] = (byte) Math.min(Math.max(mean, 0), 255);
+            }
+        }
+        return dst;
+    }
+
+    private static byte[] filled(int length, int value) {
+        byte[] array = new byte[length];
+        Arrays.fill(array, (byte) value);
+        return array;
+    }
+}
@@ -0,0 +1,77 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Изображения с альфа-каналом записываются в BMP, который не поддерживает прозрачность:
+ * непрозрачные пиксели сохраняют цвет, прозрачные накладываются на белый фон.
+ */
+class ImageExporterTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(ints = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR})
+    void opaqueAlphaImageKeepsColorsInBmp(int type) throws IOException {
+        BufferedImage image = new BufferedImage(23, 17, type);
+        int[] pixels = new int[23 * 17];
+        Random random = new Random(type);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(1 << 24);
+        }
+        image.setRGB(0, 0, 23, 17, pixels, 0, 23);
+
+        Path file = directory.resolve("image.bmp");
+        ImageExporter.of(SpatialFiltering.ExportFormat.BMP).write(image, file, null);
+
+        BufferedImage result = ImageIO.read(file.toFile());
+        assertFalse(result.getColorModel().hasAlpha());
+        assertArrayEquals(pixels, result.getRGB(0, 0, 23, 17, null, 0, 23));
+    }
+
+    @Test
+    void transparentPixelsAreFlattenedOntoWhite() throws IOException {
+        BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0x00000000);
+        image.setRGB(1, 0, 0x80000000);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ImageExporter.of(SpatialFiltering.ExportFormat.BMP).write(image, stream, null);
+
+        BufferedImage result = ImageIO.read(new ByteArrayInputStream(stream.toByteArray()));
+        assertEquals(0xFFFFFFFF, result.getRGB(0, 0));
+        // Черный с половинной прозрачностью на белом фоне - серый
+        int gray = result.getRGB(1, 0) & 0xFF;
+        assertEquals(0x7F, gray, 1);
+    }
+
+    @Test
+    void pngKeepsAlpha() throws IOException {
+        BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0x80123456);
+        image.setRGB(1, 0, 0x00000000);
+
+        Path file = directory.resolve("image.png");
+        ImageExporter.of(SpatialFiltering.ExportFormat.PNG_FAST).write(image, file, null);
+
+        BufferedImage result = ImageIO.read(file.toFile());
+        assertEquals(0x80123456, result.getRGB(0, 0));
+        assertEquals(0, result.getRGB(1, 0) >>> 24);
+    }
+}
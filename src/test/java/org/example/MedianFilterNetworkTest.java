@@ -0,0 +1,142 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сети сравнений для масок 3x3 и 5x5 должны совпадать со скользящей гистограммой и с сортировкой
+ * окна, включая крайние строки и столбцы, где окно дополняется повторением краевых пикселей.
+ */
+class MedianFilterNetworkTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 5})
+    void matchesHistogramAndSortOnAllSmallSizes(int maskSize) {
+        // Все размеры до 9x9: изображения меньше маски и изображения из одних крайних пикселей
+        Random random = new Random(maskSize);
+        for (int width = 1; width <= 9; width++) {
+            for (int height = 1; height <= 9; height++) {
+                for (int range : new int[]{256, 3}) {
+                    byte[] src = MedianFilterTest.randomPlane(random, width, height, range);
+                    assertNetworkMatches(src, width, height, maskSize);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 5})
+    void matchesOnBinaryImages(int maskSize) {
+        // По принципу 0-1 ошибочный компаратор сети проявляется уже на окнах из двух значений
+        Random random = new Random(31 + maskSize);
+        for (int i = 0; i < 20; i++) {
+            byte[] src = new byte[57 * 43];
+            for (int j = 0; j < src.length; j++) {
+                src[j] = random.nextInt(100) < 5 + i * 4 ? (byte) 0xFF : 0;
+            }
+            assertNetworkMatches(src, 57, 43, maskSize);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 5})
+    void matchesOnRampsAndRandomImages(int maskSize) {
+        int width = 131;
+        int height = 67;
+        byte[] horizontal = new byte[width * height];
+        byte[] vertical = new byte[width * height];
+        byte[] diagonal = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                horizontal[y * width + x] = (byte) (x * 2);
+                vertical[y * width + x] = (byte) (255 - y * 3);
+                diagonal[y * width + x] = (byte) (x * 7 + y * 13);
+            }
+        }
+        assertNetworkMatches(horizontal, width, height, maskSize);
+        assertNetworkMatches(vertical, width, height, maskSize);
+        assertNetworkMatches(diagonal, width, height, maskSize);
+        byte[] random = MedianFilterTest.randomPlane(new Random(maskSize), width, height, 256);
+        assertNetworkMatches(random, width, height, maskSize);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 5})
+    void edgeRowsAndColumnsMatchSortReference(int maskSize) {
+        // Постоянная середина и случайная рамка шириной в маску: отличаются только края
+        int width = 29;
+        int height = 19;
+        Random random = new Random(7 * maskSize);
+        for (int i = 0; i < 50; i++) {
+            byte[] src = new byte[width * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    boolean border = x < maskSize || y < maskSize
+                            || x >= width - maskSize || y >= height - maskSize;
+                    src[y * width + x] = (byte) (border ? random.nextInt(256) : 128);
+                }
+            }
+            byte[] expected = MedianFilterTest.reference(src, width, height, maskSize);
+            byte[] actual = filter(src, width, height, maskSize, 0, height);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(expected[y * width + x] & 0xFF, actual[y * width + x] & 0xFF,
+                            "маска " + maskSize + ", строка " + y + ", столбец " + x);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 5})
+    void rowRangesMatchWholeImage(int maskSize) {
+        // Диапазон строк у верхнего и нижнего края и внутри изображения, в том числе одна строка
+        int width = 23;
+        int height = 17;
+        byte[] src = MedianFilterTest.randomPlane(new Random(11 * maskSize), width, height, 256);
+        byte[] whole = filter(src, width, height, maskSize, 0, height);
+        int[][] ranges = {{0, 1}, {0, 2}, {height - 1, height}, {height - 2, height}, {1, height - 1}, {5, 9}, {8, 9}};
+        for (int[] range : ranges) {
+            byte[] partial = filter(src, width, height, maskSize, range[0], range[1]);
+            for (int y = range[0]; y < range[1]; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(whole[y * width + x], partial[y * width + x],
+                            "маска " + maskSize + ", строки " + range[0] + ".." + range[1] + ", строка " + y
+                                    + ", столбец " + x);
+                }
+            }
+        }
+    }
+
+    @Test
+    void uniformImageIsUnchanged() {
+        for (int value : new int[]{0, 1, 127, 254, 255}) {
+            byte[] src = new byte[13 * 11];
+            Arrays.fill(src, (byte) value);
+            assertArrayEquals(src, filter(src, 13, 11, 3, 0, 11), "3x3, значение " + value);
+            assertArrayEquals(src, filter(src, 13, 11, 5, 0, 11), "5x5, значение " + value);
+        }
+    }
+
+    private static void assertNetworkMatches(byte[] src, int width, int height, int maskSize) {
+        byte[] actual = filter(src, width, height, maskSize, 0, height);
+        byte[] histogram = new byte[src.length];
+        MedianFilter.filterRowsHistogram(src, histogram, width, height, maskSize, 0, height);
+        assertArrayEquals(histogram, actual, width + "x" + height + ", маска " + maskSize + ": гистограмма");
+        assertArrayEquals(MedianFilterTest.reference(src, width, height, maskSize), actual,
+                width + "x" + height + ", маска " + maskSize + ": сортировка");
+    }
+
+    private static byte[] filter(byte[] src, int width, int height, int maskSize, int fromRow, int toRow) {
+        byte[] dst = new byte[src.length];
+        MedianFilter.filterRows(src, dst, width, height, maskSize, fromRow, toRow);
+        return dst;
+    }
+}
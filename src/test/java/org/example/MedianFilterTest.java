@@ -0,0 +1,85 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Медианный фильтр должен совпадать с сортировкой окна, в котором координаты за границей
+ * изображения заменяются ближайшими крайними пикселями.
+ */
+class MedianFilterTest {
+
+    private static final int[] MASK_SIZES = {3, 5, 7, 9, 11, 13, 15};
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 5, 7, 9, 11, 13, 15})
+    void matchesSortReference(int maskSize) {
+        Random random = new Random(maskSize);
+        // Полный диапазон значений и малое число различных значений (много равных элементов окна)
+        for (int range : new int[]{256, 4}) {
+            byte[] src = randomPlane(random, 41, 29, range);
+            assertArrayEquals(reference(src, 41, 29, maskSize), filter(src, 41, 29, maskSize),
+                    "маска " + maskSize + ", значения 0.." + (range - 1));
+        }
+    }
+
+    @Test
+    void degenerateSizesMatchSortReference() {
+        // 1x1, одна строка, один столбец и изображения меньше маски
+        int[][] sizes = {{1, 1}, {1, 23}, {23, 1}, {2, 2}, {3, 2}, {4, 7}, {7, 4}};
+        Random random = new Random(1);
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            byte[] src = randomPlane(random, width, height, 256);
+            for (int maskSize : MASK_SIZES) {
+                assertArrayEquals(reference(src, width, height, maskSize), filter(src, width, height, maskSize),
+                        width + "x" + height + ", маска " + maskSize);
+            }
+        }
+    }
+
+    private static byte[] filter(byte[] src, int width, int height, int maskSize) {
+        byte[] dst = new byte[src.length];
+        MedianFilter.filterRows(src, dst, width, height, maskSize, 0, height);
+        return dst;
+    }
+
+    /**
+     * Медиана каждого окна сортировкой с повторением крайних пикселей.
+     */
+    static byte[] reference(byte[] src, int width, int height, int maskSize) {
+        int offset = maskSize / 2;
+        byte[] dst = new byte[src.length];
+        int[] window = new int[maskSize * maskSize];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int n = 0;
+                for (int dy = -offset; dy <= offset; dy++) {
+                    int row = Math.min(Math.max(y + dy, 0), height - 1);
+                    for (int dx = -offset; dx <= offset; dx++) {
+                        int col = Math.min(Math.max(x + dx, 0), width - 1);
+                        window[n++] = src[row * width + col] & 0xFF;
+                    }
+                }
+                Arrays.sort(window);
+                dst[y * width + x] = (byte) window[window.length / 2];
+            }
+        }
+        return dst;
+    }
+
+    static byte[] randomPlane(Random random, int width, int height, int range) {
+        byte[] plane = new byte[width * height];
+        for (int i = 0; i < plane.length; i++) {
+            plane[i] = (byte) random.nextInt(range);
+        }
+        return plane;
+    }
+}
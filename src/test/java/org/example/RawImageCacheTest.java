@@ -0,0 +1,91 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Изображение, прочитанное из несжатого файла кэша, должно совпадать с декодированным:
+ * тип, пиксели и ключ, хранящийся в заголовке.
+ */
+class RawImageCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(ints = {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR})
+    void cachedImageEqualsDecodedImage(int type) throws IOException {
+        Path file = writePng(type);
+        RawImageCache cache = new RawImageCache(directory.resolve("cache"));
+
+        BufferedImage decoded = cache.read(file);
+        assertEquals(1, rawFileCount());
+
+        // Повторное чтение - из файла кэша, без декодирования PNG
+        RawImageCache.Entry entry = cache.load(file);
+        assertNotNull(entry.getPlanar());
+        assertEquals(type, entry.getType());
+        assertEquals(ResultCache.imageKey(decoded), entry.key());
+
+        BufferedImage cached = entry.toImage();
+        assertEquals(type, cached.getType());
+        assertEquals(ResultCache.imageKey(decoded), ResultCache.imageKey(cached));
+    }
+
+    @Test
+    void truncatedCacheFileIsDecodedAgain() throws IOException {
+        Path file = writePng(BufferedImage.TYPE_3BYTE_BGR);
+        RawImageCache cache = new RawImageCache(directory.resolve("cache"));
+        String key = ResultCache.imageKey(cache.read(file));
+
+        Path rawFile = rawFile();
+        byte[] content = Files.readAllBytes(rawFile);
+        Files.write(rawFile, Arrays.copyOf(content, content.length - 100));
+
+        assertEquals(key, ResultCache.imageKey(cache.read(file)));
+        assertEquals(content.length, Files.size(rawFile()));
+    }
+
+    private Path writePng(int type) throws IOException {
+        BufferedImage image = new BufferedImage(37, 29, type);
+        Random random = new Random(type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        Path file = directory.resolve("image.png");
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+
+    private Path rawFile() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.resolve("cache"), "*.raw")) {
+            return files.iterator().next();
+        }
+    }
+
+    private long rawFileCount() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.resolve("cache"), "*.raw")) {
+            long count = 0;
+            for (Path ignored : files) {
+                count++;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Изображения из кэша на диске должны возвращаться того же типа и с теми же пикселями,
+ * что и сохраненные, хотя декодер PNG создает изображения своего типа.
+ */
+class ResultCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(ints = {
+            BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_BGR,
+            BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY})
+    void diskCacheRestoresImageType(int type) {
+        BufferedImage image = randomImage(type);
+        new ResultCache(0, directory).put("image-filter-MEDIAN-3", image);
+
+        // Кэш в памяти отключен: изображение читается с диска, в том числе другим экземпляром
+        BufferedImage cached = new ResultCache(0, directory).get("image-filter-MEDIAN-3");
+        assertNotNull(cached);
+        assertEquals(type, cached.getType());
+        assertEquals(ResultCache.imageKey(image), ResultCache.imageKey(cached));
+    }
+
+    @Test
+    void keysWithCommonPrefixAreDistinct() {
+        // Ключ одного результата - начало ключа другого
+        ResultCache cache = new ResultCache(0, directory);
+        BufferedImage first = randomImage(BufferedImage.TYPE_INT_RGB);
+        BufferedImage second = randomImage(BufferedImage.TYPE_BYTE_GRAY);
+        cache.put("image-noise-0", first);
+        cache.put("image-noise-0.5", second);
+
+        assertEquals(ResultCache.imageKey(first), ResultCache.imageKey(cache.get("image-noise-0")));
+        assertEquals(ResultCache.imageKey(second), ResultCache.imageKey(cache.get("image-noise-0.5")));
+        assertNull(cache.get("image-noise"));
+    }
+
+    @Test
+    void memoryCacheReturnsSameImage() {
+        ResultCache cache = new ResultCache(1 << 20, null);
+        BufferedImage image = randomImage(BufferedImage.TYPE_INT_RGB);
+        cache.put("image", image);
+        assertSame(image, cache.get("image"));
+        assertNull(cache.get("other"));
+    }
+
+    private static BufferedImage randomImage(int type) {
+        BufferedImage image = new BufferedImage(19, 13, type);
+        Random random = new Random(type);
+        int[] pixels = new int[19 * 13];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        image.setRGB(0, 0, 19, 13, pixels, 0, 19);
+        return image;
+    }
+}
@@ -0,0 +1,72 @@
+package org.example;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Фильтрация полосами с записью в TIFF должна давать то же изображение, что и фильтрация
+ * целиком в памяти, при любой высоте полосы.
+ */
+class StripProcessorTest {
+
+    // Высота не кратна высотам полос: последняя полоса неполная
+    private static final int WIDTH = 61;
+    private static final int HEIGHT = 47;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(SpatialFiltering.FilterType.class)
+    void stripOutputEqualsWholeImage(SpatialFiltering.FilterType filterType) throws IOException {
+        Path input = directory.resolve("input.png");
+        ImageIO.write(noisyImage(), "png", input.toFile());
+        PlanarImage source = PlanarImage.fromImage(ImageIO.read(input.toFile()));
+
+        try (TiledExecutor executor = new TiledExecutor(1)) {
+            for (int maskSize : new int[]{3, 7, 11}) {
+                PlanarImage expected = new PlanarImage(WIDTH, HEIGHT);
+                ProcessingPipeline.applyFilter(source, expected, filterType, maskSize, executor);
+
+                for (int stripHeight : new int[]{1, 7, 64}) {
+                    Path output = directory.resolve(filterType + "-" + maskSize + "-" + stripHeight + ".tiff");
+                    new StripProcessor(filterType, maskSize, stripHeight, executor).process(input, output, "tiff");
+
+                    BufferedImage result = ImageIO.read(output.toFile());
+                    assertEquals(WIDTH, result.getWidth());
+                    assertEquals(HEIGHT, result.getHeight());
+                    PlanarImage actual = PlanarImage.fromImage(result);
+                    for (int c = 0; c < expected.getChannelCount(); c++) {
+                        assertArrayEquals(expected.getPlane(c), actual.getPlane(c),
+                                filterType + ", маска " + maskSize + ", полоса " + stripHeight + ", канал " + c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Создает изображение со случайными значениями и импульсным шумом.
+     */
+    private static BufferedImage noisyImage() {
+        PlanarImage planar = new PlanarImage(WIDTH, HEIGHT);
+        Random random = new Random(9);
+        for (int c = 0; c < planar.getChannelCount(); c++) {
+            random.nextBytes(planar.getPlane(c));
+        }
+        NoiseGenerator.apply(planar, SpatialFiltering.NoiseType.BIPOLAR, 0.2, 3);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        planar.writeTo(image);
+        return image;
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Переключающийся медианный фильтр: неповрежденные пиксели не изменяются, маска из одних
+ * кандидатов дает обычную медиану, а фильтрация полосами совпадает с фильтрацией целиком.
+ */
+class SwitchingMedianFilterTest {
+
+    private static final int WIDTH = 67;
+    private static final int HEIGHT = 301;
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 5, 7, 11})
+    void nonImpulsePixelsArePassedThrough(int maskSize) {
+        PlanarImage source = noisyImage(0.3);
+        PlanarImage target = new PlanarImage(WIDTH, HEIGHT);
+        try (TiledExecutor executor = new TiledExecutor(1)) {
+            SwitchingMedianFilter.apply(source, target, maskSize, executor);
+        }
+
+        int unchanged = 0;
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            if (isImpulse(source, i)) {
+                continue;
+            }
+            for (int c = 0; c < source.getChannelCount(); c++) {
+                assertEquals(source.getPlane(c)[i], target.getPlane(c)[i], "пиксель " + i + ", канал " + c);
+            }
+            unchanged++;
+        }
+        // Шум плотностью 30% оставляет большую часть пикселей неповрежденной
+        assertTrue(unchanged > WIDTH * HEIGHT / 2, "неповрежденных пикселей: " + unchanged);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 5, 7, 11})
+    void allImpulseMaskFallsBackToPlainMedian(int maskSize) {
+        // Каждый пиксель - черная или белая точка во всех каналах
+        PlanarImage source = new PlanarImage(WIDTH, 23);
+        Random random = new Random(maskSize);
+        for (int i = 0; i < WIDTH * 23; i++) {
+            byte value = random.nextBoolean() ? (byte) 0xFF : 0;
+            for (int c = 0; c < source.getChannelCount(); c++) {
+                source.getPlane(c)[i] = value;
+            }
+        }
+        PlanarImage target = new PlanarImage(WIDTH, 23);
+        try (TiledExecutor executor = new TiledExecutor(1)) {
+            SwitchingMedianFilter.apply(source, target, maskSize, executor);
+        }
+
+        for (int c = 0; c < source.getChannelCount(); c++) {
+            assertArrayEquals(MedianFilterTest.reference(source.getPlane(c), WIDTH, 23, maskSize),
+                    target.getPlane(c), "маска " + maskSize + ", канал " + c);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 64, 128, 256})
+    void stripsMatchWholeImage(int stripHeight) {
+        PlanarImage source = noisyImage(0.5);
+        try (TiledExecutor executor = new TiledExecutor(1)) {
+            for (int maskSize = 3; maskSize <= 11; maskSize += 2) {
+                PlanarImage expected = new PlanarImage(WIDTH, HEIGHT);
+                SwitchingMedianFilter.apply(source, expected, maskSize, executor);
+                PlanarImage expectedChannel = new PlanarImage(WIDTH, HEIGHT, 1);
+                SwitchingMedianFilter.applyToChannel(source, 1, expectedChannel, maskSize, executor);
+
+                PlanarImage actual = new PlanarImage(WIDTH, HEIGHT);
+                PlanarImage actualChannel = new PlanarImage(WIDTH, HEIGHT, 1);
+                for (int fromRow = 0; fromRow < HEIGHT; fromRow += stripHeight) {
+                    int toRow = Math.min(HEIGHT, fromRow + stripHeight);
+                    SwitchingMedianFilter.apply(source, actual, maskSize, executor, fromRow, toRow);
+                    SwitchingMedianFilter.applyToChannel(source, 1, actualChannel, maskSize, executor, fromRow, toRow);
+                }
+
+                for (int c = 0; c < source.getChannelCount(); c++) {
+                    assertArrayEquals(expected.getPlane(c), actual.getPlane(c),
+                            "полоса " + stripHeight + ", маска " + maskSize + ", канал " + c);
+                }
+                assertArrayEquals(expectedChannel.getPlane(0), actualChannel.getPlane(0),
+                        "полоса " + stripHeight + ", маска " + maskSize + ", один канал");
+            }
+        }
+    }
+
+    private static boolean isImpulse(PlanarImage image, int index) {
+        byte value = image.getPlane(0)[index];
+        if (value != 0 && value != (byte) 0xFF) {
+            return false;
+        }
+        for (int c = 1; c < image.getChannelCount(); c++) {
+            if (image.getPlane(c)[index] != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Создает изображение со случайными значениями и биполярным импульсным шумом.
+     */
+    private static PlanarImage noisyImage(double density) {
+        PlanarImage image = new PlanarImage(WIDTH, HEIGHT);
+        Random random = new Random(5);
+        for (int c = 0; c < image.getChannelCount(); c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        NoiseGenerator.apply(image, SpatialFiltering.NoiseType.BIPOLAR, density, 11);
+        return image;
+    }
+}
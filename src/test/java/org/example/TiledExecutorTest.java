@@ -0,0 +1,75 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Параллельная фильтрация по полосам должна давать результат, побитово совпадающий
+ * с последовательной обработкой; закрытый исполнитель освобождает свой пул потоков.
+ */
+class TiledExecutorTest {
+
+    // Нечетные размеры: полосы разной высоты и неполные полосы у нижнего края
+    private static final int WIDTH = 257;
+    private static final int HEIGHT = 193;
+
+    @ParameterizedTest
+    @EnumSource(SpatialFiltering.FilterType.class)
+    void parallelResultEqualsSequential(SpatialFiltering.FilterType filterType) {
+        PlanarImage source = noisyImage();
+        try (TiledExecutor sequential = new TiledExecutor(1); TiledExecutor parallel = new TiledExecutor(4)) {
+            for (int maskSize = 3; maskSize <= 11; maskSize += 2) {
+                PlanarImage expected = new PlanarImage(WIDTH, HEIGHT);
+                PlanarImage actual = new PlanarImage(WIDTH, HEIGHT);
+                ProcessingPipeline.applyFilter(source, expected, filterType, maskSize, sequential);
+                ProcessingPipeline.applyFilter(source, actual, filterType, maskSize, parallel);
+
+                for (int c = 0; c < source.getChannelCount(); c++) {
+                    assertArrayEquals(expected.getPlane(c), actual.getPlane(c),
+                            filterType + ", маска " + maskSize + ", канал " + c);
+                }
+            }
+        }
+    }
+
+    @Test
+    void closedExecutorRejectsParallelBands() {
+        TiledExecutor executor = new TiledExecutor(2);
+        executor.close();
+        assertThrows(RejectedExecutionException.class, () -> executor.forEachBand(HEIGHT, (fromRow, toRow) -> { }));
+    }
+
+    @Test
+    void defaultExecutorIsNotClosed() {
+        TiledExecutor executor = TiledExecutor.getDefault();
+        executor.close();
+        int[] rows = new int[1];
+        executor.forEachBand(HEIGHT, (fromRow, toRow) -> {
+            synchronized (rows) {
+                rows[0] += toRow - fromRow;
+            }
+        });
+        assertEquals(HEIGHT, rows[0]);
+    }
+
+    /**
+     * Создает изображение со случайными значениями и импульсным шумом.
+     */
+    private static PlanarImage noisyImage() {
+        PlanarImage image = new PlanarImage(WIDTH, HEIGHT);
+        Random random = new Random(42);
+        for (int c = 0; c < image.getChannelCount(); c++) {
+            random.nextBytes(image.getPlane(c));
+        }
+        NoiseGenerator.apply(image, SpatialFiltering.NoiseType.UNIPOLAR, 0.2, 7);
+        return image;
+    }
+}
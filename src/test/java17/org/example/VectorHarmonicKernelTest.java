@@ -0,0 +1,100 @@
+package org.example;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Векторное ядро среднегармонического фильтра должно давать те же байты, что и скалярное,
+ * при любой ширине строки, в том числе в хвосте строки короче вектора.
+ * <p>
+ * Собирается и запускается только с профилем {@code jdk17}: {@code mvn -Pjdk17 test}.
+ */
+class VectorHarmonicKernelTest {
+
+    private static final int[] MASK_SIZES = {1, 3, 5, 7, 11, 15};
+
+    private VectorHarmonicKernel kernel;
+
+    @BeforeEach
+    void createKernel() {
+        // Без аппаратных векторов ядро не создается и фильтр работает в скалярном режиме
+        int lanes = LongVector.SPECIES_PREFERRED.length();
+        assumeTrue(lanes >= 2 && DoubleVector.SPECIES_PREFERRED.length() == lanes,
+                "векторные регистры недоступны");
+        kernel = new VectorHarmonicKernel();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {256, 2})
+    void matchesScalarKernelForAllWidths(int range) {
+        // Ширины от одного пикселя до нескольких векторов: полные векторы и хвосты любой длины
+        Random random = new Random(range);
+        for (int width = 1; width <= 70; width++) {
+            for (int maskSize : MASK_SIZES) {
+                byte[] src = MedianFilterTest.randomPlane(random, width, 5, range);
+                assertKernelsMatch(src, width, 5, maskSize);
+            }
+        }
+    }
+
+    @Test
+    void matchesScalarKernelOnLargeImage() {
+        // Большие суммы в таблице: разности больших чисел после преобразования в double
+        int width = 2048;
+        int height = 257;
+        byte[] src = new byte[width * height];
+        new Random(3).nextBytes(src);
+        for (int maskSize : MASK_SIZES) {
+            assertKernelsMatch(src, width, height, maskSize);
+        }
+    }
+
+    @Test
+    void matchesScalarKernelOnUniformImages() {
+        // Крайние значения среднего: окно из нулей дает 1, окно из 255 ограничивается 255
+        for (int value = 0; value < 256; value++) {
+            byte[] src = new byte[37 * 4];
+            Arrays.fill(src, (byte) value);
+            assertKernelsMatch(src, 37, 4, 5);
+        }
+    }
+
+    private void assertKernelsMatch(byte[] src, int width, int height, int maskSize) {
+        int padding = maskSize / 2;
+        int stride = width + 2 * padding + 1;
+        long[] table = new long[HarmonicMeanFilter.tableSize(width, height, maskSize)];
+        HarmonicMeanFilter.buildTable(src, width, height, padding, 0, height, table);
+
+        double[] vectorMeans = new double[width];
+        double[] scalarMeans = new double[width];
+        for (int y = 0; y < height; y++) {
+            int top = y * stride;
+            int bottom = top + maskSize * stride;
+            kernel.meanRow(table, top, bottom, maskSize, vectorMeans, width);
+            HarmonicMeanFilter.meanRow(table, top, bottom, maskSize, scalarMeans, 0, width);
+            assertArrayEquals(toBytes(scalarMeans), toBytes(vectorMeans),
+                    width + "x" + height + ", маска " + maskSize + ", строка " + y);
+        }
+    }
+
+    /**
+     * Преобразует средние в байты так же, как {@link HarmonicMeanFilter#meanRows}.
+     */
+    private static byte[] toBytes(double[] means) {
+        byte[] bytes = new byte[means.length];
+        for (int x = 0; x < means.length; x++) {
+            bytes[x] = (byte) (int) means[x];
+        }
+        return bytes;
+    }
+}